@@ -0,0 +1,81 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.brain.mdp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.Action;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.DialogueActTag;
+import edu.pugetsound.mathcs.nlp.lang.Conversation;
+import edu.pugetsound.mathcs.nlp.lang.Utterance;
+
+/**
+ * Measures choosing an action and updating the Q-table. The QLearner starts from an empty
+ * table and every action gets the same reward, so no model files or user are needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class QLearnerBenchmark {
+
+	private QLearner learner;
+	private List<Conversation> conversations;
+	private int[] samples;
+	private int next;
+
+	@Setup
+	public void setup() {
+		learner = new QLearner(new HyperVariables(0.1, 1000));
+		learner.setRewardSource(new FixedRewardSource(3));
+
+		// One conversation for every dialogue act the user can answer the greeting with
+		conversations = new ArrayList<Conversation>();
+		for(DialogueActTag tag : DialogueActTag.values()) {
+			Conversation conversation = new Conversation();
+			Utterance greeting = new Utterance("Hello.");
+			greeting.daTag = DialogueActTag.CONVENTIONAL_OPENING;
+			conversation.addUtterance(greeting);
+			Utterance reply = new Utterance("");
+			reply.daTag = tag;
+			conversation.addUtterance(reply);
+			conversations.add(conversation);
+		}
+
+		// Random (state, action, reward, state) samples for updateQTable
+		Random rng = new Random(425);
+		samples = new int[4 * 1024];
+		for(int i = 0; i < samples.length; i += 4) {
+			samples[i] = rng.nextInt(learner.states.numStates());
+			samples[i + 1] = rng.nextInt(learner.actions.length);
+			samples[i + 2] = 1 + rng.nextInt(5);
+			samples[i + 3] = rng.nextInt(learner.states.numStates());
+		}
+	}
+
+	@Benchmark
+	public Action getAction() {
+		return learner.getAction(conversations.get(next++ % conversations.size()));
+	}
+
+	@Benchmark
+	public double updateQTable() {
+		int i = (next++ % (samples.length / 4)) * 4;
+		learner.updateQTable(samples[i], samples[i + 1], samples[i + 2], samples[i + 3]);
+		return learner.q_table[samples[i]][samples[i + 1]];
+	}
+}
@@ -0,0 +1,59 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.datag;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.DialogueActTag;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.features.stanford.StanfordSuite;
+import edu.pugetsound.mathcs.nlp.lang.Conversation;
+import edu.pugetsound.mathcs.nlp.lang.Utterance;
+import edu.pugetsound.mathcs.nlp.util.BenchmarkFixtures;
+
+/**
+ * Measures dialogue act classification in every classifier mode. The utterances are run
+ * through the CoreNLP pipeline during setup, so only the classifier is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class DAClassifierBenchmark {
+
+	@Param({"NAIVE_BAYES", "MAX_ENT", "DECISION_TREE", "DUMB_NAIVE_BAYES", "DUMB_MAX_ENT", "DUMB_DECISION_TREE"})
+	public String mode;
+
+	private DAClassifier classifier;
+	private List<Utterance> utterances;
+	private Conversation conversation;
+	private int next;
+
+	@Setup
+	public void setup() {
+		classifier = new DAClassifier(DAClassifier.Mode.valueOf(mode));
+		utterances = BenchmarkFixtures.analyzedUtterances(new StanfordSuite());
+
+		// The classifiers look at the dialogue act of the previous utterance
+		Utterance previous = new Utterance("Hello.");
+		previous.daTag = DialogueActTag.CONVENTIONAL_OPENING;
+		conversation = new Conversation();
+		conversation.addUtterance(previous);
+	}
+
+	@Benchmark
+	public DialogueActTag classify() {
+		return classifier.classify(utterances.get(next++ % utterances.size()), conversation);
+	}
+}
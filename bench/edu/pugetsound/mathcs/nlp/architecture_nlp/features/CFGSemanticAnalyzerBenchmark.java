@@ -0,0 +1,76 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.features;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.pugetsound.mathcs.nlp.architecture_nlp.features.stanford.StanfordSuite;
+import edu.pugetsound.mathcs.nlp.kb.KBController;
+import edu.pugetsound.mathcs.nlp.lang.Conversation;
+import edu.pugetsound.mathcs.nlp.lang.Utterance;
+import edu.pugetsound.mathcs.nlp.util.BenchmarkFixtures;
+
+/**
+ * Measures the translation of constituency parses into first-order predicates.
+ *
+ * The analyzer rewrites the parse tree it is given, so every invocation gets a freshly
+ * parsed utterance. Parsing happens in an invocation-level setup and is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class CFGSemanticAnalyzerBenchmark {
+
+	private static final String KNOWLEDGE_BASE_PATH = "knowledge/";
+
+	private StanfordSuite suite;
+	private CFGSemanticAnalyzer analyzer;
+	private List<String> utterances;
+	private Conversation conversation;
+	private Utterance current;
+	private int next;
+
+	@Setup
+	public void setup() {
+		suite = new StanfordSuite();
+		analyzer = new CFGSemanticAnalyzer(new KBController(KNOWLEDGE_BASE_PATH));
+		utterances = BenchmarkFixtures.utterances();
+		conversation = new Conversation();
+	}
+
+	@Setup(Level.Invocation)
+	public void parseNext() {
+		do {
+			String text = utterances.get(next++ % utterances.size());
+			current = new Utterance(text);
+			suite.analyze(text, current);
+		} while(current.constituencyParse == null);
+	}
+
+	@Benchmark
+	public void analyze(Blackhole blackhole) {
+		try {
+			analyzer.analyze(current, conversation);
+		}
+		catch(IndexOutOfBoundsException e) {
+			// The TextAnalyzer tolerates the same failure
+			blackhole.consume(e);
+		}
+		blackhole.consume(current.firstOrderRep);
+	}
+}
@@ -0,0 +1,44 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.features;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.pugetsound.mathcs.nlp.util.BenchmarkFixtures;
+
+/**
+ * Measures the slang and contraction normalization the TextAnalyzer applies to every utterance
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class NormalizationBenchmark {
+
+	private TextAnalyzer analyzer;
+	private List<String> utterances;
+	private int next;
+
+	@Setup
+	public void setup() {
+		analyzer = new TextAnalyzer(null);
+		utterances = BenchmarkFixtures.utterances();
+	}
+
+	@Benchmark
+	public String normalize() {
+		return analyzer.normalize(utterances.get(next++ % utterances.size()));
+	}
+}
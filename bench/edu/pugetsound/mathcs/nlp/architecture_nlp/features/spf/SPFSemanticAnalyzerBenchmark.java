@@ -0,0 +1,52 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.features.spf;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.pugetsound.mathcs.nlp.lang.Conversation;
+import edu.pugetsound.mathcs.nlp.lang.Utterance;
+import edu.pugetsound.mathcs.nlp.util.BenchmarkFixtures;
+
+/**
+ * Measures semantic parsing of canonical utterances with the SPF CKY parser
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class SPFSemanticAnalyzerBenchmark {
+
+	private SPFSemanticAnalyzer analyzer;
+	private List<String> utterances;
+	private Conversation conversation;
+	private int next;
+
+	@Setup
+	public void setup() {
+		analyzer = new SPFSemanticAnalyzer();
+		utterances = BenchmarkFixtures.utterances();
+		conversation = new Conversation();
+	}
+
+	@Benchmark
+	public Utterance analyze() {
+		String text = utterances.get(next++ % utterances.size());
+		Utterance utt = new Utterance(text);
+		utt.canonicalUtterance = text.toLowerCase();
+		analyzer.analyze(utt, conversation);
+		return utt;
+	}
+}
@@ -0,0 +1,158 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.features.stanford;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import edu.pugetsound.mathcs.nlp.architecture_nlp.features.AnnotationProfile;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.features.MyTree;
+import edu.pugetsound.mathcs.nlp.lang.Utterance;
+import edu.pugetsound.mathcs.nlp.util.BenchmarkFixtures;
+
+/**
+ * Compares the parsers of FAST_SEMANTICS with those of FULL_SEMANTICS on the benchmark
+ * fixtures: how long each takes per utterance, and how often the fast parsers agree with the
+ * PCFG parser on the features the later stages read. There is no gold standard for the
+ * fixtures, so FULL_SEMANTICS is the reference. StanfordSuiteBenchmark measures the latency
+ * of both profiles more carefully; run this to see what the speed costs in accuracy.
+ *
+ * Run from the root of the repository:
+ *
+ *     java -cp "bin:lib/*" edu.pugetsound.mathcs.nlp.architecture_nlp.features.stanford.ParserComparison
+ */
+public class ParserComparison {
+
+	/**
+	 * The number of times the fixtures are analyzed before latency is measured
+	 */
+	public static final int WARMUP_ROUNDS = 2;
+
+	public static void main(String[] args) {
+		StanfordSuite suite = new StanfordSuite();
+		List<String> utterances = BenchmarkFixtures.utterances();
+
+		List<Utterance> reference = run(suite, utterances, AnnotationProfile.FULL_SEMANTICS);
+		List<Utterance> fast = run(suite, utterances, AnnotationProfile.FAST_SEMANTICS);
+
+		int parsed = 0;
+		int matched = 0;
+		int predicted = 0;
+		int gold = 0;
+		int sameTree = 0;
+		int sameRoot = 0;
+		int sameSubjects = 0;
+		int sameObjects = 0;
+		int samePassive = 0;
+		for(int i = 0; i < utterances.size(); i++) {
+			Utterance expected = reference.get(i);
+			Utterance actual = fast.get(i);
+			if(expected.constituencyParse == null || actual.constituencyParse == null) {
+				continue;
+			}
+			parsed++;
+			Set<String> expectedBrackets = brackets(expected.constituencyParse);
+			Set<String> actualBrackets = brackets(actual.constituencyParse);
+			gold += expectedBrackets.size();
+			predicted += actualBrackets.size();
+			for(String bracket : actualBrackets) {
+				if(expectedBrackets.contains(bracket)) {
+					matched++;
+				}
+			}
+			if(expectedBrackets.equals(actualBrackets)) {
+				sameTree++;
+			}
+			if(Objects.equals(expected.rootDependency, actual.rootDependency)) {
+				sameRoot++;
+			}
+			if(expected.subjects.equals(actual.subjects)) {
+				sameSubjects++;
+			}
+			if(expected.directObjects.equals(actual.directObjects)) {
+				sameObjects++;
+			}
+			if(expected.isPassive == actual.isPassive) {
+				samePassive++;
+			}
+		}
+
+		double precision = predicted == 0 ? 1 : (double) matched / predicted;
+		double recall = gold == 0 ? 1 : (double) matched / gold;
+		System.out.println();
+		System.out.println("Utterances parsed by both profiles: " + parsed + " of " + utterances.size());
+		System.out.printf("Labeled bracket precision %.3f, recall %.3f, F1 %.3f%n", precision, recall,
+				precision + recall == 0 ? 0 : 2 * precision * recall / (precision + recall));
+		System.out.printf("Same constituency tree:   %.3f%n", fraction(sameTree, parsed));
+		System.out.printf("Same dependency root:     %.3f%n", fraction(sameRoot, parsed));
+		System.out.printf("Same subjects:            %.3f%n", fraction(sameSubjects, parsed));
+		System.out.printf("Same direct objects:      %.3f%n", fraction(sameObjects, parsed));
+		System.out.printf("Same isPassive:           %.3f%n", fraction(samePassive, parsed));
+	}
+
+	/**
+	 * Analyzes every utterance with a profile and prints the latency per utterance
+	 */
+	private static List<Utterance> run(StanfordSuite suite, List<String> utterances, AnnotationProfile profile) {
+		for(int round = 0; round < WARMUP_ROUNDS; round++) {
+			for(String text : utterances) {
+				suite.analyze(text, new Utterance(text), profile);
+			}
+		}
+
+		List<Utterance> analyzed = new ArrayList<Utterance>(utterances.size());
+		long[] nanos = new long[utterances.size()];
+		for(int i = 0; i < utterances.size(); i++) {
+			Utterance utt = new Utterance(utterances.get(i));
+			long start = System.nanoTime();
+			suite.analyze(utterances.get(i), utt, profile);
+			nanos[i] = System.nanoTime() - start;
+			analyzed.add(utt);
+		}
+		long total = 0;
+		for(long n : nanos) {
+			total += n;
+		}
+		Arrays.sort(nanos);
+		System.out.printf("%s: mean %.2f ms, median %.2f ms, 95th percentile %.2f ms per utterance%n", profile,
+				total / 1e6 / nanos.length, nanos[nanos.length / 2] / 1e6, nanos[(int) (nanos.length * 0.95)] / 1e6);
+		return analyzed;
+	}
+
+	/**
+	 * Returns the labeled spans of the phrases of a tree, e.g. "NP 0 2", leaving out the root
+	 * and the part-of-speech tags as PARSEVAL does
+	 */
+	private static Set<String> brackets(MyTree root) {
+		Set<String> brackets = new HashSet<String>();
+		int start = 0;
+		for(MyTree child : root.children()) {
+			start = addBrackets(child, start, brackets);
+		}
+		return brackets;
+	}
+
+	/**
+	 * Adds the brackets of a subtree that starts at some word and returns the word after it
+	 */
+	private static int addBrackets(MyTree node, int start, Set<String> brackets) {
+		if(node.isLeaf()) {
+			return start + 1;
+		}
+		if(node.numChildren() == 1 && node.getChild(0).isLeaf()) {
+			return start + 1;
+		}
+		int end = start;
+		for(MyTree child : node.children()) {
+			end = addBrackets(child, end, brackets);
+		}
+		brackets.add(node.value() + " " + start + " " + end);
+		return end;
+	}
+
+	private static double fraction(int count, int total) {
+		return total == 0 ? 1 : (double) count / total;
+	}
+}
@@ -0,0 +1,92 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.features.stanford;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.pugetsound.mathcs.nlp.architecture_nlp.features.AnnotationProfile;
+import edu.pugetsound.mathcs.nlp.lang.Utterance;
+import edu.pugetsound.mathcs.nlp.util.BenchmarkFixtures;
+
+/**
+ * Measures the CoreNLP pipeline: annotating a sentence and extracting its tokens, parse
+ * trees and grammatical relations. The analyzeAll benchmarks compare annotating every
+ * fixture utterance one at a time with annotating them as a multi-threaded batch. Every
+ * benchmark runs once per annotation profile. analyzeConcurrently annotates single
+ * sentences from one thread per core, as concurrent sessions do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class StanfordSuiteBenchmark {
+
+	@Param({"CLASSIFY_ONLY", "FAST_SEMANTICS", "FULL_SEMANTICS", "NAMED_ENTITIES"})
+	public AnnotationProfile profile;
+
+	private StanfordSuite suite;
+	private List<String> utterances;
+	private final AtomicInteger next = new AtomicInteger();
+
+	@Setup
+	public void setup() {
+		suite = new StanfordSuite();
+		utterances = BenchmarkFixtures.utterances();
+		// Load the pipeline of the profile before measuring
+		suite.analyze(utterances.get(0), new Utterance(utterances.get(0)), profile);
+	}
+
+	@Benchmark
+	public Utterance analyze() {
+		String text = utterances.get(next.getAndIncrement() % utterances.size());
+		Utterance utt = new Utterance(text);
+		suite.analyze(text, utt, profile);
+		return utt;
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public Utterance analyzeConcurrently() {
+		return analyze();
+	}
+
+	@Benchmark
+	public List<Utterance> analyzeAllSequentially() {
+		List<Utterance> utts = newUtterances();
+		for(int i = 0; i < utterances.size(); i++) {
+			suite.analyze(utterances.get(i), utts.get(i), profile);
+		}
+		return utts;
+	}
+
+	@Benchmark
+	public List<Utterance> analyzeAllBatched() {
+		List<Utterance> utts = newUtterances();
+		suite.analyze(utterances, utts, profile);
+		return utts;
+	}
+
+	private List<Utterance> newUtterances() {
+		List<Utterance> utts = new ArrayList<Utterance>(utterances.size());
+		for(String text : utterances) {
+			utts.add(new Utterance(text));
+		}
+		return utts;
+	}
+}
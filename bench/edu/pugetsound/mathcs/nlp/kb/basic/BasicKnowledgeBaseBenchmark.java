@@ -0,0 +1,54 @@
+package edu.pugetsound.mathcs.nlp.kb.basic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.pugetsound.mathcs.nlp.kb.MyPredicate;
+import edu.pugetsound.mathcs.nlp.util.BenchmarkFixtures;
+
+/**
+ * Measures queries against a knowledge base holding a predicate for every word of the
+ * fixture utterances. Half of the queries are for formulas that are not in the knowledge base.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class BasicKnowledgeBaseBenchmark {
+
+	private BasicKnowledgeBase kb;
+	private List<String> queries;
+	private int next;
+
+	@Setup
+	public void setup() {
+		kb = new BasicKnowledgeBase();
+		queries = new ArrayList<String>();
+		for(String utterance : BenchmarkFixtures.utterances()) {
+			for(String word : utterance.split(" ")) {
+				MyPredicate pred = kb.makeUnaryPredicate(word);
+				queries.add(pred.toString());
+				queries.add("missing_" + word);
+			}
+		}
+	}
+
+	@Benchmark
+	public boolean query() {
+		return kb.query(queries.get(next++ % queries.size()));
+	}
+}
@@ -0,0 +1,112 @@
+package edu.pugetsound.mathcs.nlp.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.pugetsound.mathcs.nlp.architecture_nlp.datag.DialogueAct;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.datag.SwitchboardParser;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.features.stanford.StanfordSuite;
+import edu.pugetsound.mathcs.nlp.lang.Utterance;
+
+/**
+ * The inputs shared by the benchmarks. Every benchmark runs on the same utterances so
+ * results can be compared across changes.
+ *
+ * The utterances come from a single Switchboard conversation and from the phrase files the
+ * TextAnalyzer loads. Benchmarks must be run from the root of the repository (see PathFormat).
+ */
+public final class BenchmarkFixtures {
+
+	/**
+	 * The Switchboard conversation the utterances are taken from
+	 */
+	public static final String SWITCHBOARD_FILE = PathFormat.absolutePathFromRoot("resources/switchboard_scrubbed3/sw00utt/sw_0001_4325.utt");
+
+	/**
+	 * The phrase files whose entries are added to the utterances
+	 */
+	public static final String[] PHRASE_FILES = {
+		PathFormat.absolutePathFromRoot("models/phrases/greeting.txt"),
+		PathFormat.absolutePathFromRoot("models/phrases/closing.txt"),
+		PathFormat.absolutePathFromRoot("models/phrases/slang.txt"),
+		PathFormat.absolutePathFromRoot("models/phrases/contractions.txt")
+	};
+
+	/**
+	 * The number of Switchboard utterances used
+	 */
+	public static final int NUM_SWITCHBOARD = 200;
+
+	private BenchmarkFixtures() {
+	}
+
+	/**
+	 * Returns the utterances of the Switchboard conversation followed by the first column of
+	 * every phrase file
+	 * @return The utterances in a fixed order
+	 */
+	public static List<String> utterances() {
+		List<String> utterances = new ArrayList<String>();
+		try {
+			for(DialogueAct act : new SwitchboardParser(new File(SWITCHBOARD_FILE)).getActs()) {
+				if(!act.getWords().isEmpty() && utterances.size() < NUM_SWITCHBOARD) {
+					utterances.add(String.join(" ", act.getWords()));
+				}
+			}
+		}
+		catch(FileNotFoundException e) {
+			throw new UncheckedIOException(e);
+		}
+		utterances.addAll(phrases());
+		return utterances;
+	}
+
+	/**
+	 * Returns the first column of every phrase file (greetings, closings, slang and
+	 * contractions), each as its own utterance
+	 * @return The phrases in a fixed order
+	 */
+	public static List<String> phrases() {
+		List<String> phrases = new ArrayList<String>();
+		for(String file : PHRASE_FILES) {
+			try(BufferedReader input = new BufferedReader(new FileReader(file))) {
+				String line;
+				while((line = input.readLine()) != null) {
+					String phrase = line.split("\t")[0].trim();
+					if(!phrase.isEmpty()) {
+						phrases.add(phrase);
+					}
+				}
+			}
+			catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return phrases;
+	}
+
+	/**
+	 * Runs the utterances through the CoreNLP pipeline so benchmarks of later stages start
+	 * from the same features the TextAnalyzer would give them
+	 * @param suite A loaded pipeline
+	 * @return An analyzed utterance for every fixture utterance that has at least one sentence
+	 */
+	public static List<Utterance> analyzedUtterances(StanfordSuite suite) {
+		List<Utterance> analyzed = new ArrayList<Utterance>();
+		for(String text : utterances()) {
+			Utterance utt = new Utterance(text);
+			utt.canonicalUtterance = text.toLowerCase();
+			suite.analyze(text, utt);
+			if(utt.constituencyParse != null) {
+				analyzed.add(utt);
+			}
+		}
+		return analyzed;
+	}
+}
@@ -1,5 +1,6 @@
 package edu.pugetsound.mathcs.nlp.architecture_nlp.brain;
 
+import java.util.EnumMap;
 
 /**
  * Possible actions for the system to take. These actions are a subset of the
@@ -27,6 +28,18 @@ public enum Action {
 
 	private String label;
 
+	// The dialogue act tag of an utterance produced by taking each action
+	private static final EnumMap<Action, DialogueActTag> TAGS = new EnumMap<Action, DialogueActTag>(Action.class);
+	static {
+		for(Action action : Action.values()) {
+			for(DialogueActTag tag : DialogueActTag.values()) {
+				if(tag.name().equals(action.name())) {
+					TAGS.put(action, tag);
+				}
+			}
+		}
+	}
+
 	/**
 	 * Constructor
 	 * @param label 
@@ -36,6 +49,15 @@ public enum Action {
 		this.label = label;
 	}
 
+	/**
+	 * Returns the dialogue act tag of an utterance produced by taking this action
+	 * @return The corresponding dialogue act tag or null if no single tag corresponds to
+	 * 			this action (e.g. YES_NO_ANSWER)
+	 */
+	public DialogueActTag toDialogueActTag() {
+		return TAGS.get(this);
+	}
+
 	/**
 	 * Creates a String representation containing both the name of the
 	 * enum element and its associated Switchboard shorthand label
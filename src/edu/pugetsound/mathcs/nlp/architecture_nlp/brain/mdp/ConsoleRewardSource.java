@@ -0,0 +1,57 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.brain.mdp;
+
+import java.util.InputMismatchException;
+import java.util.Scanner;
+
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.Action;
+
+/**
+ * Asks the user on standard input to rate each action
+ */
+public class ConsoleRewardSource implements RewardSource {
+	protected static final int MAX = 5;
+	protected static final int MIN = 1;
+
+	protected Scanner in;
+
+	/**
+	 * Constructs a reward source that reads ratings from standard input
+	 */
+	public ConsoleRewardSource() {
+		in = new Scanner(System.in);
+	}
+
+	/**
+	 *	Asks the user to rate the chosen action
+	 *
+	 * @param state
+	 * 				A string representation of the current state
+	 * @param action
+	 * 				The chosen action
+	 * 
+	 * @return
+	 * 				A numerical reward for the chosen action (higher is better) 
+	 */
+	@Override
+	public synchronized int rate(String state, Action action) {
+		int reward = -1;
+		System.out.println("===================================================");
+		System.out.println("I am in state " + state);
+		System.out.println("I will respond with a " + action);
+		System.out.println("On a scale of " + MAX + "-" + MIN + ", how accurate is this response?");
+
+		while(reward < MIN || reward > MAX){
+			try {
+				reward = in.nextInt();
+				in.nextLine();
+			}	
+			catch (InputMismatchException e) {	
+				in.nextLine();
+				System.out.println("Error: Please enter an integer between " + MIN + " and " + MAX);				
+			}
+		}
+		System.out.println("===================================================");
+
+		return reward;
+	}
+}
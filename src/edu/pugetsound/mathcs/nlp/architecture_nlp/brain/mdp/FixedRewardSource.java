@@ -0,0 +1,24 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.brain.mdp;
+
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.Action;
+
+/**
+ * Gives every action the same reward. Used when nobody is available to rate the
+ * agent's actions, for example when serving network clients or replaying transcripts.
+ */
+public class FixedRewardSource implements RewardSource {
+	private final int reward;
+
+	/**
+	 * Constructs a reward source that always returns the given reward
+	 * @param reward The reward given to every action
+	 */
+	public FixedRewardSource(int reward) {
+		this.reward = reward;
+	}
+
+	@Override
+	public int rate(String state, Action action) {
+		return reward;
+	}
+}
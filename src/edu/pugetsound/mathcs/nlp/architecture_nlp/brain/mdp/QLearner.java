@@ -30,7 +30,7 @@ public class QLearner implements DecisionMaker {
 	protected int lastReward;
 
 	protected Random rng;
-	protected Scanner in;
+	protected RewardSource rewards;
 
 	protected static final String INPUT_PATH = PathFormat.absolutePathFromRoot("models/qlearner/qlearner");
 
@@ -58,8 +58,30 @@ public class QLearner implements DecisionMaker {
 		lastAction = Action.NULL.ordinal();
 		lastReward = -1;
 
-		//TODO: Refactor this so that we can unit test it???
-		in = new Scanner(System.in);
+		rewards = new ConsoleRewardSource();
+		rng = new Random();
+	}
+
+	/**
+	 * Constructs a QLearner for a single conversation that shares the hyper-parameters,
+	 * state space and Q-table of an existing QLearner. Only the bookkeeping for the
+	 * conversation in progress (the last state, action and reward) is kept separately, so
+	 * every conversation trains the same Q-table.
+	 *
+	 * @param shared
+	 * 						The QLearner whose Q-table should be shared
+	 */
+	public QLearner(QLearner shared) {
+		params = shared.params;
+		actions = shared.actions;
+		states = shared.states;
+		q_table = shared.q_table;
+
+		lastState = states.getStateId(null);
+		lastAction = Action.NULL.ordinal();
+		lastReward = -1;
+
+		rewards = shared.rewards;
 		rng = new Random();
 	}
 
@@ -94,47 +116,52 @@ public class QLearner implements DecisionMaker {
 			System.out.println("last reward was: " + lastReward);
 		}
 
-		// Compute the updated annealing parameter which ranges 
-		// from 1 to 0 over the course of EXPLORE iterations
-		params.anneal = (double) params.remaining_iters/params.EXPLORE;		
-		if (Logger.debug()) {
-			System.out.println("Remaining Iterations: " + params.remaining_iters);
-			System.out.println("Explore: " + params.EXPLORE);
-			System.out.println("anneal = remain/explore: " + params.anneal);
-		}
+		// The Q-table and hyper-parameters may be shared by several conversations (see
+		// QLearner(QLearner)), so the update and the choice are made while holding the table
+		int stateIndex;
+		int choice = -1;
+		synchronized(q_table) {
+			// Compute the updated annealing parameter which ranges 
+			// from 1 to 0 over the course of EXPLORE iterations
+			params.anneal = (double) params.remaining_iters/params.EXPLORE;		
+			if (Logger.debug()) {
+				System.out.println("Remaining Iterations: " + params.remaining_iters);
+				System.out.println("Explore: " + params.EXPLORE);
+				System.out.println("anneal = remain/explore: " + params.anneal);
+			}
 
 
-		// Get the id of the current state
-		int stateIndex = states.getStateId(conversation);
-		if (Logger.debug()) {
-			System.out.println("current state index: " + stateIndex);
-			System.out.println("current state: " + states.idToState(states.getStateId(conversation)));
-			System.out.println("Updating previous states");
-		}
+			// Get the id of the current state
+			stateIndex = states.getStateId(conversation);
+			if (Logger.debug()) {
+				System.out.println("current state index: " + stateIndex);
+				System.out.println("current state: " + states.idToState(states.getStateId(conversation)));
+				System.out.println("Updating previous states");
+			}
 
 
-		// Updates the Q-table given the sample (s, a, r, s') where
-		// s is the state from *last* time
-		// a is the action taken from *last* time
-		// r is the reward given for that action
-		// s' is the result of taking action a in state s
-		updateQTable(lastState, lastAction, lastReward, stateIndex);
+			// Updates the Q-table given the sample (s, a, r, s') where
+			// s is the state from *last* time
+			// a is the action taken from *last* time
+			// r is the reward given for that action
+			// s' is the result of taking action a in state s
+			updateQTable(lastState, lastAction, lastReward, stateIndex);
 
 
-		// TODO: They are using the same annealed parameter for (1) deciding between exploring/exploiting
-		// and (2) the \alpha value in the Q learning update equation. Are these the same value? Can they be?
+			// TODO: They are using the same annealed parameter for (1) deciding between exploring/exploiting
+			// and (2) the \alpha value in the Q learning update equation. Are these the same value? Can they be?
 
 
-		// Choose a valid action by either exploring or exploiting
-		int choice = -1;
-		do {
-			if (rng.nextInt(params.EXPLORE) < params.remaining_iters) {		
-				choice = explore(); // explore
+			// Choose a valid action by either exploring or exploiting
+			do {
+				if (rng.nextInt(params.EXPLORE) < params.remaining_iters) {		
+					choice = explore(); // explore
 				
-			} else {
-				choice = exploit(stateIndex); // exploit
-			}			
-		}while(actions[choice] == Action.NULL);
+				} else {
+					choice = exploit(stateIndex); // exploit
+				}			
+			}while(actions[choice] == Action.NULL);
+		}
 		
 		if(Logger.debug()){
 			System.out.println("Chosen action:");
@@ -154,7 +181,9 @@ public class QLearner implements DecisionMaker {
 		// Q-table the *next* time this method is called.
 		lastAction = choice;
 		lastState = stateIndex;
-		params.decrement();
+		synchronized(q_table) {
+			params.decrement();
+		}
 
 		//return the action that we decided to take to the processing actions team.
 		return actions[choice];
@@ -210,7 +239,18 @@ public class QLearner implements DecisionMaker {
 	}
 
 	/**
-	 *	Asks the user to rate the chosen action
+	 * Changes who rates the actions chosen by this QLearner. By default the user is
+	 * asked on standard input.
+	 *
+	 * @param rewards
+	 * 				The source of rewards for chosen actions
+	 */
+	public void setRewardSource(RewardSource rewards) {
+		this.rewards = rewards;
+	}
+
+	/**
+	 *	Asks the reward source to rate the chosen action
 	 *
 	 * @param state
 	 * 				The index of the current state
@@ -221,27 +261,7 @@ public class QLearner implements DecisionMaker {
 	 * 				A numerical reward for the chosen action (higher is better) 
 	 */
 	protected int rateActionChoice(int state, int choice) {
-		final int MAX = 5;
-		final int MIN = 1;
-		int reward = -1;
-		System.out.println("===================================================");
-		System.out.println("I am in state " + states.idToState(state));
-		System.out.println("I will respond with a " + actions[choice]);
-		System.out.println("On a scale of " + MAX + "-" + MIN + ", how accurate is this response?");
-
-		while(reward < MIN || reward > MAX){
-			try {
-				reward = in.nextInt();
-				in.nextLine();
-			}	
-			catch (InputMismatchException e) {	
-				in.nextLine();
-				System.out.println("Error: Please enter an integer between " + MIN + " and " + MAX);				
-			}
-		}
-		System.out.println("===================================================");
-
-		return reward;
+		return rewards.rate(states.idToState(state), actions[choice]);
 	}
 
 
@@ -284,38 +304,40 @@ public class QLearner implements DecisionMaker {
 	 * @return - true if operation was successful, false otherwise
 	 */
 	public boolean saveToFile() {
-		File file = new File(INPUT_PATH);
-		FileWriter writer = null;
-
-		try {
-			writer = new FileWriter(file);
-			writer.append(String.valueOf(params.GAMMA)
-					+ "," + String.valueOf(params.remaining_iters)
-					+ "," + String.valueOf(params.EXPLORE));
-
-			for (int i = 0; i < q_table.length; i++) {
-				writer.append("\n");
-				for (int j = 0; j < q_table[i].length; j++) {
-					if (j == q_table[i].length - 1) {
-						writer.append(String.valueOf(q_table[i][j]));
-					} else {
-						writer.append(String.valueOf(q_table[i][j]) + ",");
+		synchronized(q_table) {
+			File file = new File(INPUT_PATH);
+			FileWriter writer = null;
+
+			try {
+				writer = new FileWriter(file);
+				writer.append(String.valueOf(params.GAMMA)
+						+ "," + String.valueOf(params.remaining_iters)
+						+ "," + String.valueOf(params.EXPLORE));
+
+				for (int i = 0; i < q_table.length; i++) {
+					writer.append("\n");
+					for (int j = 0; j < q_table[i].length; j++) {
+						if (j == q_table[i].length - 1) {
+							writer.append(String.valueOf(q_table[i][j]));
+						} else {
+							writer.append(String.valueOf(q_table[i][j]) + ",");
+						}
 					}
 				}
+			} catch (IOException e) {
+				System.err.println("Couldn't write to file");
+				e.printStackTrace();
+				return false;
 			}
-		} catch (IOException e) {
-			System.err.println("Couldn't write to file");
-			e.printStackTrace();
-			return false;
-		}
-		try {
-			writer.flush();
-			writer.close();
-		} catch (IOException e) {
-			System.out.println("error in QLearner - saveToFile()");
-			e.printStackTrace();
+			try {
+				writer.flush();
+				writer.close();
+			} catch (IOException e) {
+				System.out.println("error in QLearner - saveToFile()");
+				e.printStackTrace();
+			}
+			return true;
 		}
-		return true;
 	}
 
 	/**
@@ -324,32 +346,34 @@ public class QLearner implements DecisionMaker {
 	 * @return - true if operation was successful, false otherwise
 	 */
 	public boolean readFromFile() {
-		final String DELIMITER = ",";
-
-		try {
-			BufferedReader fileReader;
-			fileReader = new BufferedReader(new FileReader(INPUT_PATH));
-
-			//Read first line, which contains instance variables: GAMMA, ANNEAL, and EXPLORE
-			String line = fileReader.readLine();
-			String[] tokens = line.split(DELIMITER);
-			params.GAMMA = Double.parseDouble(tokens[0]);
-			params.remaining_iters = Integer.parseInt(tokens[1]);
-			params.EXPLORE = Integer.parseInt(tokens[2]);
-
-			for (int i = 0; i < q_table.length; i++) {
-				line = fileReader.readLine();
-				tokens = line.split(DELIMITER);
-				for (int j = 0; j < q_table[i].length; j++) {					
-					q_table[i][j] = Double.parseDouble(tokens[j]);
+		synchronized(q_table) {
+			final String DELIMITER = ",";
+
+			try {
+				BufferedReader fileReader;
+				fileReader = new BufferedReader(new FileReader(INPUT_PATH));
+
+				//Read first line, which contains instance variables: GAMMA, ANNEAL, and EXPLORE
+				String line = fileReader.readLine();
+				String[] tokens = line.split(DELIMITER);
+				params.GAMMA = Double.parseDouble(tokens[0]);
+				params.remaining_iters = Integer.parseInt(tokens[1]);
+				params.EXPLORE = Integer.parseInt(tokens[2]);
+
+				for (int i = 0; i < q_table.length; i++) {
+					line = fileReader.readLine();
+					tokens = line.split(DELIMITER);
+					for (int j = 0; j < q_table[i].length; j++) {					
+						q_table[i][j] = Double.parseDouble(tokens[j]);
+					}
 				}
+				fileReader.close();
+			} catch (IOException e) {
+				System.err.println("Couldn't read from file");
+				e.printStackTrace();
+				return false;
 			}
-			fileReader.close();
-		} catch (IOException e) {
-			System.err.println("Couldn't read from file");
-			e.printStackTrace();
-			return false;
+			return true;
 		}
-		return true;
 	}
 }
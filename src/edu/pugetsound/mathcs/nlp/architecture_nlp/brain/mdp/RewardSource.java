@@ -0,0 +1,24 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.brain.mdp;
+
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.Action;
+
+/**
+ * A RewardSource rates the actions chosen by the QLearner. The rating is the reward
+ * used to update the Q-table.
+ *
+ * Examples include asking the person at the keyboard (the original behavior) or returning
+ * a fixed reward when nobody is there to ask, such as when serving many conversations at once.
+ */
+public interface RewardSource {
+
+	/**
+	 * Rates the choice of an action in a given state
+	 *
+	 * @param state
+	 * 				A string representation of the current state
+	 * @param action
+	 * 				The chosen action
+	 * @return A numerical reward for the chosen action (higher is better)
+	 */
+	public int rate(String state, Action action);
+}
@@ -1,5 +1,8 @@
 package edu.pugetsound.mathcs.nlp.architecture_nlp.datag;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.DialogueActTag;
 import edu.pugetsound.mathcs.nlp.architecture_nlp.datag.classify.Classifier;
 import edu.pugetsound.mathcs.nlp.architecture_nlp.datag.classify.DumbClassifier;
@@ -123,4 +126,40 @@ public class DAClassifier {
 		}
 	}
 
+	/**
+	 * Predicts the type of dialogue act of many utterances at once. The utterances the
+	 * DumbClassifier cannot tag are classified together in a single batch.
+	 *
+	 * @param utterances
+	 *            The utterances
+	 * @param conversation
+	 *            The conversation the utterances would follow
+	 * @return The predicted DialogueActTag of each utterance, in the same order
+	 */
+	public List<DialogueActTag> classify(List<Utterance> utterances, Conversation conversation) {
+		if (dumbClassifier == null) {
+			return secondaryClassifier.classify(utterances, conversation);
+		}
+
+		List<DialogueActTag> tags = dumbClassifier.classify(utterances, conversation);
+		List<Utterance> remaining = new ArrayList<Utterance>();
+		for (int i = 0; i < tags.size(); i++) {
+			if (tags.get(i) == null) {
+				remaining.add(utterances.get(i));
+			}
+		}
+		if (remaining.isEmpty()) {
+			return tags;
+		}
+
+		List<DialogueActTag> secondary = secondaryClassifier.classify(remaining, conversation);
+		int next = 0;
+		for (int i = 0; i < tags.size(); i++) {
+			if (tags.get(i) == null) {
+				tags.set(i, secondary.get(next++));
+			}
+		}
+		return tags;
+	}
+
 }
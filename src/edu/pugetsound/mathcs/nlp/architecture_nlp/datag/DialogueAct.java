@@ -11,7 +11,7 @@ import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.DialogueActTag;
  * @author Creavesjohnson
  * @version 05/13/2016
  */
-class DialogueAct {
+public class DialogueAct {
 
 	private final DialogueActTag tag;
 	private final DialogueActTag previousTag;
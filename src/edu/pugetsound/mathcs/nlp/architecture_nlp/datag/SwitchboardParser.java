@@ -22,7 +22,7 @@ import edu.pugetsound.mathcs.nlp.util.Logger;
  * @author Creavesjohnson
  * @version 05/13/2016
  */
-class SwitchboardParser {
+public class SwitchboardParser {
 
 	// Suffix of Switchboard data files
 	private static final String SB_SUFFIX = ".utt";
@@ -1,5 +1,7 @@
 package edu.pugetsound.mathcs.nlp.architecture_nlp.datag.classify;
 
+import java.util.List;
+
 import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.DialogueActTag;
 import edu.pugetsound.mathcs.nlp.lang.Conversation;
 import edu.pugetsound.mathcs.nlp.lang.Utterance;
@@ -23,4 +25,15 @@ public interface Classifier {
 	 * @return The predicted DialogueActTag for the utterance
 	 */
 	public DialogueActTag classify(Utterance utterance, Conversation conversation);
+
+	/**
+	 * Classifies many Utterances, each as if it were the next utterance of a Conversation
+	 * 
+	 * @param utterances
+	 *            The utterances
+	 * @param conversation
+	 *            The conversation the utterances would follow
+	 * @return The predicted DialogueActTag of each utterance, in the same order
+	 */
+	public List<DialogueActTag> classify(List<Utterance> utterances, Conversation conversation);
 }
@@ -1,5 +1,8 @@
 package edu.pugetsound.mathcs.nlp.architecture_nlp.datag.classify;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.DialogueActTag;
 import edu.pugetsound.mathcs.nlp.lang.Conversation;
 import edu.pugetsound.mathcs.nlp.lang.Utterance;
@@ -55,6 +58,24 @@ public class DumbClassifier implements Classifier {
 		}
 	}
 
+	/**
+	 * Classifies each utterance into its question type based on hard-coded rules.
+	 * 
+	 * @param utterances
+	 *            The utterances to classify
+	 * @param c
+	 *            The conversation the utterances would follow
+	 * @return The predicted DialogueActTag of each utterance (null for those
+	 *         that could not be classified)
+	 */
+	public List<DialogueActTag> classify(List<Utterance> utterances, Conversation c) {
+		List<DialogueActTag> tags = new ArrayList<DialogueActTag>(utterances.size());
+		for (Utterance u : utterances) {
+			tags.add(classify(u, c));
+		}
+		return tags;
+	}
+
 	/**
 	 * Determines whether or not a string starts with ANY of the given prefixes
 	 * 
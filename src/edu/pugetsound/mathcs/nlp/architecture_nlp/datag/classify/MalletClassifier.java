@@ -7,10 +7,14 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
+import cc.mallet.classify.Classification;
 import cc.mallet.pipe.iterator.LineIterator;
 import cc.mallet.types.Instance;
+import cc.mallet.types.InstanceList;
 import cc.mallet.types.Labeling;
 import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.DialogueActTag;
 import edu.pugetsound.mathcs.nlp.lang.Conversation;
@@ -60,16 +64,13 @@ public class MalletClassifier implements Classifier {
 	 * Uses the MALLET classifier to classify an Utterance
 	 * @param u The utterance to classify
 	 * @param c The conversation which contains the utterance
-	 * @return The classification DialogueActTag
+	 * @return The classification DialogueActTag, or null if the utterance has no tokens
 	 */
 	public DialogueActTag classify(Utterance u, Conversation c) {
+		if (u.tokens.isEmpty())
+			return null;
 
-		DialogueActTag prevTag = DialogueActTag.NULL;
-
-		if (c.getConversation().size() > 0)
-			prevTag = c.getLastUtterance().daTag;
-
-		String utterance = prevTag.name() + " " + utteranceToString(u).toLowerCase();
+		String utterance = previousTag(c).name() + " " + utteranceToString(u).toLowerCase();
 
 		Reader inputReader = new StringReader(utterance);
 		LineIterator input = new LineIterator(inputReader, "(.*)$", 1, 0, 0);
@@ -83,6 +84,51 @@ public class MalletClassifier implements Classifier {
 		return null;
 	}
 
+	/**
+	 * Uses the MALLET classifier to classify many Utterances at once. The utterances are
+	 * piped into a single InstanceList and classified together. Utterances without tokens
+	 * are left out of the list, since a single empty instance would fail the whole batch,
+	 * and their tag is null as with classify(Utterance, Conversation).
+	 * @param utterances The utterances to classify
+	 * @param c The conversation the utterances would follow
+	 * @return The classification DialogueActTag of each utterance
+	 */
+	public List<DialogueActTag> classify(List<Utterance> utterances, Conversation c) {
+		List<DialogueActTag> tags = new ArrayList<DialogueActTag>(utterances.size());
+		String prevTag = previousTag(c).name();
+		StringBuilder lines = new StringBuilder();
+		for (Utterance u : utterances) {
+			tags.add(null);
+			if (!u.tokens.isEmpty())
+				lines.append(prevTag).append(' ').append(utteranceToString(u).toLowerCase());
+		}
+		if (lines.length() == 0)
+			return tags;
+
+		LineIterator input = new LineIterator(new StringReader(lines.toString()), "(.*)$", 1, 0, 0);
+		InstanceList instances = new InstanceList(CLASSIFIER.getInstancePipe());
+		instances.addThruPipe(input);
+
+		int next = 0;
+		for (Classification classification : CLASSIFIER.classify(instances)) {
+			while (utterances.get(next).tokens.isEmpty())
+				next++;
+			tags.set(next++, DialogueActTag.valueOf(classification.getLabeling().getBestLabel().toString()));
+		}
+		return tags;
+	}
+
+	/**
+	 * Returns the dialogue act of the last utterance of a conversation
+	 * @param c A conversation
+	 * @return The DialogueActTag of the last utterance or NULL if there is none
+	 */
+	private DialogueActTag previousTag(Conversation c) {
+		if (c.getConversation().size() > 0)
+			return c.getLastUtterance().daTag;
+		return DialogueActTag.NULL;
+	}
+
 	/**
 	 * Construct a space-separated, String representation of the utterance
 	 * @param u An Utterance
@@ -0,0 +1,62 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.datag.classify;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.DialogueActTag;
+import edu.pugetsound.mathcs.nlp.lang.Conversation;
+import edu.pugetsound.mathcs.nlp.lang.Token;
+import edu.pugetsound.mathcs.nlp.lang.Utterance;
+import edu.pugetsound.mathcs.nlp.util.PathFormat;
+
+public class MalletClassifierTest {
+
+	private MalletClassifier classifier;
+	private Conversation conversation;
+
+	@Before
+	public void setUp() throws Exception {
+		classifier = new MalletClassifier(PathFormat.absolutePathFromRoot("models/datag/naive-bayes.classifier"));
+		conversation = new Conversation();
+	}
+
+	@Test
+	public void testBatchWithEmptyUtterance() {
+		List<Utterance> batch = Arrays.asList(utterance("The cat ate the fish."), utterance(""),
+				utterance("I like dogs."));
+		List<DialogueActTag> tags = classifier.classify(batch, conversation);
+		assertEquals(3, tags.size());
+		assertEquals(classifier.classify(batch.get(0), conversation), tags.get(0));
+		assertNull(tags.get(1));
+		assertEquals(classifier.classify(batch.get(2), conversation), tags.get(2));
+		assertNotNull(tags.get(0));
+		assertNotNull(tags.get(2));
+	}
+
+	@Test
+	public void testBatchOfEmptyUtterances() {
+		List<DialogueActTag> tags = classifier.classify(Arrays.asList(utterance(""), utterance("...")), conversation);
+		assertEquals(Arrays.asList(null, null), tags);
+		assertNull(classifier.classify(utterance(""), conversation));
+		assertTrue(classifier.classify(new ArrayList<Utterance>(), conversation).isEmpty());
+	}
+
+	/**
+	 * Returns an utterance whose tokens are its words, without punctuation
+	 */
+	private Utterance utterance(String text) {
+		Utterance h = new Utterance(text);
+		for(String word : text.replaceAll("\\p{Punct}", "").split(" ")) {
+			if(!word.isEmpty()) {
+				h.tokens.add(new Token(word));
+			}
+		}
+		return h;
+	}
+}
@@ -0,0 +1,327 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.features;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.cornell.cs.nlp.spf.ccg.lexicon.LexicalEntry;
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
+import edu.pugetsound.mathcs.nlp.lang.DependencyGraph;
+import edu.pugetsound.mathcs.nlp.lang.Punctuation;
+import edu.pugetsound.mathcs.nlp.lang.Token;
+import edu.pugetsound.mathcs.nlp.lang.Utterance;
+import edu.pugetsound.mathcs.nlp.util.Metrics;
+
+/**
+ * Remembers the features of recently analyzed utterances that do not depend on the
+ * conversation: the tokens and parse trees computed by the NLP pipeline and the SPF parse.
+ * Short utterances ("yes", "ok", "I see") and the agent's canned responses repeat often, and
+ * each repeat would otherwise pay for a full CoreNLP and SPF parse.
+ *
+ * Utterances are looked up by their canonical form together with their surface text, since
+ * the NLP pipeline runs on the surface text and its case and punctuation change the tags.
+ * The cache is bounded by an estimate of the memory its entries use and evicts the least
+ * recently used entries first. Entries are immutable and features are copied into and out
+ * of them, so later stages can modify an utterance without corrupting the cache.
+ */
+public class AnalysisCache {
+
+	// Rough sizes in bytes used to estimate the memory an entry uses
+	private static final int ENTRY_OVERHEAD = 256;
+	private static final int TOKEN_OVERHEAD = 128;
+	private static final int TREE_NODE_OVERHEAD = 96;
+	private static final int DEPENDENCY_OVERHEAD = 24;
+	private static final int LEXICAL_ENTRY_OVERHEAD = 512;
+
+	private static final LongAdder HITS = Metrics.counter("analyzer.cache.hits");
+	private static final LongAdder MISSES = Metrics.counter("analyzer.cache.misses");
+	private static final LongAdder EVICTIONS = Metrics.counter("analyzer.cache.evictions");
+
+	private final long maxBytes;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+	private long bytes = 0;
+
+	/**
+	 * Constructs an empty cache
+	 * @param maxBytes The most memory the entries may use, estimated
+	 */
+	public AnalysisCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Looks up the features of an utterance
+	 * @param h An utterance whose text and canonical form are set
+	 * @return The cached features or null if there are none
+	 */
+	public Entry get(Utterance h) {
+		Entry entry;
+		synchronized(this) {
+			entry = entries.get(keyOf(h));
+		}
+		if(entry == null) {
+			MISSES.increment();
+		}
+		else {
+			HITS.increment();
+		}
+		return entry;
+	}
+
+	/**
+	 * Stores the features of an utterance, replacing any features stored for it before. The
+	 * least recently used entries are evicted until the cache fits in its memory limit.
+	 * @param entry The features of an utterance
+	 */
+	public void put(Entry entry) {
+		if(entry.bytes > maxBytes) {
+			return;
+		}
+		synchronized(this) {
+			Entry old = entries.put(entry.key, entry);
+			if(old != null) {
+				bytes -= old.bytes;
+			}
+			bytes += entry.bytes;
+			Iterator<Entry> eldest = entries.values().iterator();
+			while(bytes > maxBytes && eldest.hasNext()) {
+				bytes -= eldest.next().bytes;
+				eldest.remove();
+				EVICTIONS.increment();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of utterances in the cache
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the estimated memory used by the entries in bytes
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Removes every entry
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	private static String keyOf(Utterance h) {
+		return h.canonicalUtterance + "\n" + h.utterance;
+	}
+
+	/**
+	 * The context-independent features of a single utterance
+	 */
+	public static class Entry {
+		private final String key;
+		private final long bytes;
+		private final AnnotationProfile profile;
+
+		// Restore the sentences of an utterance with more than one
+		private final String text;
+		private final String canonical;
+		private final Punctuation punct;
+		private final List<Entry> sentences = new ArrayList<Entry>();
+
+		private final List<Token> tokens;
+		private final MyTree constituencyParse;
+		private final String rootConstituency;
+		private final DependencyGraph dependencyParse;
+		private final String rootDependency;
+		private final List<String> subjects;
+		private final List<String> directObjects;
+		private final boolean isPassive;
+
+		private final boolean hasSemantics;
+		private final String SPFparse;
+		private final LinkedHashSet<LexicalEntry<LogicalExpression>> SpfWordBreaks;
+
+		/**
+		 * Copies the features the NLP pipeline computed for an utterance with the
+		 * FULL_SEMANTICS profile. Must be called before later stages modify the parse tree.
+		 * @param h An utterance that has been through the NLP pipeline
+		 * @return The features of the utterance, without a semantic parse
+		 */
+		public static Entry of(Utterance h) {
+			return of(h, AnnotationProfile.FULL_SEMANTICS);
+		}
+
+		/**
+		 * Copies the features the NLP pipeline computed for an utterance. Must be called
+		 * before later stages modify the parse tree.
+		 * @param h An utterance that has been through the NLP pipeline
+		 * @param profile The profile the NLP pipeline ran with
+		 * @return The features of the utterance, without a semantic parse
+		 */
+		public static Entry of(Utterance h, AnnotationProfile profile) {
+			return new Entry(h, null, profile, false);
+		}
+
+		private Entry(Utterance h, Entry syntax, AnnotationProfile profile, boolean hasSemantics) {
+			key = keyOf(h);
+			this.profile = profile;
+			text = h.utterance;
+			canonical = h.canonicalUtterance;
+			punct = h.punct;
+			if(syntax != null) {
+				tokens = syntax.tokens;
+				constituencyParse = syntax.constituencyParse;
+				rootConstituency = syntax.rootConstituency;
+				dependencyParse = syntax.dependencyParse;
+				rootDependency = syntax.rootDependency;
+				subjects = syntax.subjects;
+				directObjects = syntax.directObjects;
+				isPassive = syntax.isPassive;
+				for(int i = 0; i < syntax.sentences.size(); i++) {
+					sentences.add(hasSemantics && i < h.sentences.size()
+							? new Entry(h.sentences.get(i), syntax.sentences.get(i), profile, true) : syntax.sentences.get(i));
+				}
+			}
+			else {
+				tokens = copyTokens(h.tokens);
+				constituencyParse = h.constituencyParse == null ? null : h.constituencyParse.copy();
+				rootConstituency = h.rootConstituency;
+				dependencyParse = h.dependencyParse;
+				rootDependency = h.rootDependency;
+				subjects = new ArrayList<String>(h.subjects);
+				directObjects = new ArrayList<String>(h.directObjects);
+				isPassive = h.isPassive;
+				for(Utterance sentence : h.sentences) {
+					sentences.add(of(sentence, profile));
+				}
+			}
+
+			this.hasSemantics = hasSemantics;
+			SPFparse = hasSemantics ? h.SPFparse : null;
+			SpfWordBreaks = hasSemantics && h.SpfWordBreaks != null
+					? new LinkedHashSet<LexicalEntry<LogicalExpression>>(h.SpfWordBreaks) : null;
+
+			bytes = estimateBytes();
+		}
+
+		/**
+		 * Returns a copy of this entry that also holds the semantic parse of an utterance
+		 * @param h The utterance these features were computed from, after semantic analysis
+		 * @return The new entry
+		 */
+		public Entry withSemantics(Utterance h) {
+			return new Entry(h, this, profile, true);
+		}
+
+		/**
+		 * Returns true if the entry holds every feature the NLP pipeline computes with a
+		 * profile
+		 */
+		public boolean covers(AnnotationProfile profile) {
+			return this.profile.covers(profile);
+		}
+
+		/**
+		 * Returns true if the entry holds a semantic parse
+		 */
+		public boolean hasSemantics() {
+			return hasSemantics;
+		}
+
+		/**
+		 * Returns the number of sentences of the utterance if it has more than one, otherwise 0
+		 */
+		public int numSentences() {
+			return sentences.size();
+		}
+
+		/**
+		 * Copies the features computed by the NLP pipeline into an utterance
+		 * @param h The utterance
+		 */
+		public void restoreSyntax(Utterance h) {
+			h.tokens = copyTokens(tokens);
+			h.constituencyParse = constituencyParse == null ? null : constituencyParse.copy();
+			h.rootConstituency = rootConstituency;
+			// Immutable, so it is shared rather than copied
+			h.dependencyParse = dependencyParse;
+			h.rootDependency = rootDependency;
+			h.subjects = new ArrayList<String>(subjects);
+			h.directObjects = new ArrayList<String>(directObjects);
+			h.isPassive = isPassive;
+			List<Utterance> copies = new ArrayList<Utterance>(sentences.size());
+			for(Entry entry : sentences) {
+				Utterance sentence = new Utterance(entry.text);
+				sentence.canonicalUtterance = entry.canonical;
+				sentence.punct = entry.punct;
+				entry.restoreSyntax(sentence);
+				copies.add(sentence);
+			}
+			h.sentences = copies;
+		}
+
+		/**
+		 * Copies the semantic parse into an utterance
+		 * @param h The utterance
+		 */
+		public void restoreSemantics(Utterance h) {
+			h.SPFparse = SPFparse;
+			h.SpfWordBreaks = SpfWordBreaks == null ? null
+					: new LinkedHashSet<LexicalEntry<LogicalExpression>>(SpfWordBreaks);
+			for(int i = 0; i < sentences.size() && i < h.sentences.size(); i++) {
+				sentences.get(i).restoreSemantics(h.sentences.get(i));
+			}
+		}
+
+		private long estimateBytes() {
+			long size = ENTRY_OVERHEAD + 2L * (key.length() + length(SPFparse));
+			size += dependencyParse == null ? 0 : DEPENDENCY_OVERHEAD * dependencyParse.size();
+			for(Token t : tokens) {
+				size += TOKEN_OVERHEAD + 2L * length(t.token);
+			}
+			size += TREE_NODE_OVERHEAD * countNodes(constituencyParse);
+			if(SpfWordBreaks != null) {
+				size += LEXICAL_ENTRY_OVERHEAD * SpfWordBreaks.size();
+			}
+			for(Entry sentence : sentences) {
+				size += sentence.bytes;
+			}
+			return size;
+		}
+
+		private static List<Token> copyTokens(List<Token> tokens) {
+			List<Token> copies = new ArrayList<Token>(tokens.size());
+			for(Token t : tokens) {
+				Token copy = new Token(t.token);
+				copy.pos = t.pos;
+				copy.beginPosition = t.beginPosition;
+				copy.endPosition = t.endPosition;
+				copy.entityTag = t.entityTag;
+				copies.add(copy);
+			}
+			return copies;
+		}
+
+		private static int countNodes(MyTree tree) {
+			if(tree == null) {
+				return 0;
+			}
+			int count = 1;
+			for(MyTree child : tree.children()) {
+				count += countNodes(child);
+			}
+			return count;
+		}
+
+		private static int length(String s) {
+			return s == null ? 0 : s.length();
+		}
+	}
+}
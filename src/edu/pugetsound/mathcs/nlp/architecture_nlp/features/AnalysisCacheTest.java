@@ -0,0 +1,127 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.features;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import edu.pugetsound.mathcs.nlp.lang.Punctuation;
+import edu.pugetsound.mathcs.nlp.lang.Token;
+import edu.pugetsound.mathcs.nlp.lang.Utterance;
+
+public class AnalysisCacheTest {
+
+	private static Utterance analyzed(String text) {
+		Utterance h = new Utterance(text);
+		h.canonicalUtterance = text.toLowerCase();
+		for(String word : text.split(" ")) {
+			Token t = new Token(word);
+			t.pos = "NN";
+			h.tokens.add(t);
+		}
+		h.subjects.add(text.split(" ")[0]);
+		return h;
+	}
+
+	@Test
+	public void testHitRestoresCopies() {
+		AnalysisCache cache = new AnalysisCache(1 << 20);
+		Utterance first = analyzed("I see");
+		cache.put(AnalysisCache.Entry.of(first));
+		first.tokens.get(0).pos = "PRP";
+		first.subjects.clear();
+
+		Utterance second = new Utterance("I see");
+		second.canonicalUtterance = "i see";
+		AnalysisCache.Entry entry = cache.get(second);
+		assertNotNull(entry);
+		entry.restoreSyntax(second);
+		assertEquals(2, second.tokens.size());
+		assertEquals("NN", second.tokens.get(0).pos);
+		assertEquals(1, second.subjects.size());
+		assertNotSame(first.tokens.get(1), second.tokens.get(1));
+	}
+
+	@Test
+	public void testSurfaceTextIsPartOfKey() {
+		AnalysisCache cache = new AnalysisCache(1 << 20);
+		cache.put(AnalysisCache.Entry.of(analyzed("I see")));
+		Utterance lower = new Utterance("i see");
+		lower.canonicalUtterance = "i see";
+		assertNull(cache.get(lower));
+	}
+
+	@Test
+	public void testSemantics() {
+		AnalysisCache cache = new AnalysisCache(1 << 20);
+		Utterance h = analyzed("yes");
+		AnalysisCache.Entry entry = AnalysisCache.Entry.of(h);
+		assertFalse(entry.hasSemantics());
+		h.SPFparse = "(yes:t)";
+		cache.put(entry.withSemantics(h));
+
+		Utterance again = analyzed("yes");
+		entry = cache.get(again);
+		assertTrue(entry.hasSemantics());
+		entry.restoreSemantics(again);
+		assertEquals("(yes:t)", again.SPFparse);
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testProfile() {
+		AnalysisCache cache = new AnalysisCache(1 << 20);
+		cache.put(AnalysisCache.Entry.of(analyzed("ok"), AnnotationProfile.CLASSIFY_ONLY));
+		AnalysisCache.Entry entry = cache.get(analyzed("ok"));
+		assertTrue(entry.covers(AnnotationProfile.CLASSIFY_ONLY));
+		assertFalse(entry.covers(AnnotationProfile.FULL_SEMANTICS));
+		assertTrue(AnalysisCache.Entry.of(analyzed("ok")).covers(AnnotationProfile.CLASSIFY_ONLY));
+		// A fast parse does not stand in for an accurate one, but the reverse is fine
+		assertTrue(AnalysisCache.Entry.of(analyzed("ok")).covers(AnnotationProfile.FAST_SEMANTICS));
+		assertFalse(AnalysisCache.Entry.of(analyzed("ok"), AnnotationProfile.FAST_SEMANTICS).covers(AnnotationProfile.FULL_SEMANTICS));
+	}
+
+	@Test
+	public void testSentences() {
+		AnalysisCache cache = new AnalysisCache(1 << 20);
+		Utterance h = analyzed("Hi there. I see");
+		h.sentences.add(analyzed("Hi there."));
+		h.sentences.add(analyzed("I see"));
+		h.sentences.get(1).punct = Punctuation.UNKNOWN;
+		AnalysisCache.Entry entry = AnalysisCache.Entry.of(h);
+		h.sentences.get(1).SPFparse = "(see:t)";
+		cache.put(entry.withSemantics(h));
+
+		Utterance again = analyzed("Hi there. I see");
+		entry = cache.get(again);
+		assertEquals(2, entry.numSentences());
+		entry.restoreSyntax(again);
+		entry.restoreSemantics(again);
+		assertEquals(2, again.sentences.size());
+		assertEquals("Hi there.", again.sentences.get(0).utterance);
+		assertEquals("i see", again.sentences.get(1).canonicalUtterance);
+		assertEquals(Punctuation.UNKNOWN, again.sentences.get(1).punct);
+		assertEquals(2, again.sentences.get(1).tokens.size());
+		assertEquals("(see:t)", again.sentences.get(1).SPFparse);
+		assertNotSame(h.sentences.get(1).tokens.get(0), again.sentences.get(1).tokens.get(0));
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		// Utterances of the same length have the same estimated size
+		AnalysisCache probe = new AnalysisCache(Long.MAX_VALUE);
+		probe.put(AnalysisCache.Entry.of(analyzed("aa")));
+		long entryBytes = probe.getBytes();
+
+		AnalysisCache cache = new AnalysisCache(2 * entryBytes);
+		cache.put(AnalysisCache.Entry.of(analyzed("aa")));
+		cache.put(AnalysisCache.Entry.of(analyzed("bb")));
+		assertNotNull(cache.get(analyzed("aa")));
+		cache.put(AnalysisCache.Entry.of(analyzed("cc")));
+
+		assertEquals(2, cache.size());
+		assertTrue(cache.getBytes() <= 2 * entryBytes);
+		assertNotNull(cache.get(analyzed("aa")));
+		assertNull(cache.get(analyzed("bb")));
+		assertNotNull(cache.get(analyzed("cc")));
+	}
+}
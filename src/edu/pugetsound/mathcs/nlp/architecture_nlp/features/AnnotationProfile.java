@@ -0,0 +1,55 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.features;
+
+/**
+ * The features an NLPSuite computes for a piece of text, chosen by what the later stages of
+ * analysis read. Each profile computes everything the profiles before it compute, so the
+ * cheapest profile that covers the stages that will run can be used.
+ */
+public enum AnnotationProfile {
+	/**
+	 * The sentences and tokens, which is all the dialogue act classifier reads
+	 */
+	CLASSIFY_ONLY,
+
+	/**
+	 * The same features as FULL_SEMANTICS, computed by faster but less accurate parsers
+	 */
+	FAST_SEMANTICS,
+
+	/**
+	 * Also the part of speech of each token and the constituency and dependency parses (with
+	 * the roots, subjects, direct objects and isPassive read off them), which anaphora
+	 * resolution and CFG semantics read
+	 */
+	FULL_SEMANTICS,
+
+	/**
+	 * Also the named entity tag of each token. No stage of the analysis reads it.
+	 */
+	NAMED_ENTITIES;
+
+	/**
+	 * The system property that chooses the parsers of a deployment: "fast" for
+	 * FAST_SEMANTICS, anything else for FULL_SEMANTICS
+	 */
+	public static final String PARSER_PROPERTY = "nlp.parser";
+
+	/**
+	 * Returns the profile that computes the features every stage reads, with the parsers the
+	 * deployment chose (see PARSER_PROPERTY)
+	 * @return FAST_SEMANTICS or FULL_SEMANTICS
+	 */
+	public static AnnotationProfile semantics() {
+		return "fast".equalsIgnoreCase(System.getProperty(PARSER_PROPERTY)) ? FAST_SEMANTICS : FULL_SEMANTICS;
+	}
+
+	/**
+	 * Returns true if this profile computes every feature another profile computes, at least
+	 * as accurately
+	 * @param other The other profile
+	 * @return True if this profile is at least as complete as the other
+	 */
+	public boolean covers(AnnotationProfile other) {
+		return ordinal() >= other.ordinal();
+	}
+}
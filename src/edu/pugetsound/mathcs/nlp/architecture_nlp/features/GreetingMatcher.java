@@ -0,0 +1,289 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.features;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.DialogueActTag;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.datag.DialogueAct;
+
+/**
+ * Recognizes greetings and closings that are close to, but not exactly, one of a list of
+ * known phrases, e.g. "hiii", "Hello there!!" or "good bye".
+ *
+ * Both the phrases and the input are normalized first: lowercased, without punctuation,
+ * with runs of the same letter collapsed to one letter and with extra whitespace removed.
+ * Words like "there" or "everyone" at the end of the input are ignored. The normalized
+ * phrases are stored in a trie, which is searched for phrases within a small edit distance
+ * of the input. The distance allowed grows with the length of the input and is zero for
+ * short inputs, where a single edit turns one word into another ("hi" and "i"). A single
+ * word is never matched approximately to another single word, since most near misses of a
+ * one-word greeting or closing are different words ("right" and "night", "help" and
+ * "hello"); it can only be a misspelling of a phrase of several words ("goodnight").
+ * Empty phrases and inputs never match.
+ *
+ * The matcher is immutable once constructed and can be shared by any number of threads.
+ */
+public class GreetingMatcher {
+
+	/**
+	 * Words that may follow a greeting or closing without changing what it is
+	 */
+	protected static final Set<String> FILLERS = new HashSet<String>(Arrays.asList(
+			"there", "again", "everyone", "everybody", "all", "guys", "friend", "buddy", "now", "then"));
+
+	/**
+	 * The fillers as they appear in a normalized text (e.g. "al" for "all")
+	 */
+	private static final Set<String> NORMALIZED_FILLERS = new HashSet<String>();
+	static {
+		for(String filler : FILLERS) {
+			NORMALIZED_FILLERS.add(normalize(filler));
+		}
+	}
+
+	/**
+	 * The number of times a Switchboard utterance must occur before it is trusted
+	 */
+	public static final int MIN_SWITCHBOARD_COUNT = 3;
+
+	/**
+	 * The fraction of the occurrences of a Switchboard utterance that must be tagged as the
+	 * same greeting or closing before it is trusted
+	 */
+	public static final double MIN_SWITCHBOARD_PRECISION = 0.9;
+
+	private final HashMap<String, DialogueActTag> exact = new HashMap<String, DialogueActTag>();
+	private final Node root;
+
+	/**
+	 * Compiles a list of greetings and closings
+	 * @param phrases A map from each phrase to its dialogue act
+	 */
+	public GreetingMatcher(Map<String, DialogueActTag> phrases) {
+		Builder trie = new Builder();
+		for(Map.Entry<String, DialogueActTag> entry : phrases.entrySet()) {
+			String phrase = normalize(entry.getKey());
+			if(phrase.isEmpty()) {
+				continue;
+			}
+			exact.put(phrase, entry.getValue());
+			Builder node = trie;
+			for(int i = 0; i < phrase.length(); i++) {
+				node = node.children.computeIfAbsent(phrase.charAt(i), c -> new Builder());
+			}
+			node.tag = entry.getValue();
+			node.multiWord = phrase.indexOf(' ') >= 0;
+		}
+		root = trie.freeze();
+	}
+
+	/**
+	 * Returns the dialogue act of a greeting or closing
+	 * @param input A piece of text
+	 * @return CONVENTIONAL_OPENING, CONVENTIONAL_CLOSING (or whichever tag the closest phrase
+	 * 			has), or null if the input is not close to exactly one known phrase
+	 */
+	public DialogueActTag match(String input) {
+		String text = stripFillers(normalize(input));
+		if(text.isEmpty()) {
+			return null;
+		}
+		DialogueActTag tag = exact.get(text);
+		if(tag != null) {
+			return tag;
+		}
+		int maxDistance = maxDistance(text.length());
+		if(maxDistance == 0) {
+			return null;
+		}
+
+		Search search = new Search(text, maxDistance, text.indexOf(' ') < 0);
+		int[] row = new int[text.length() + 1];
+		for(int i = 0; i < row.length; i++) {
+			row[i] = i;
+		}
+		search.visit(root, row);
+		return search.ambiguous ? null : search.best;
+	}
+
+	/**
+	 * Returns the number of distinct normalized phrases
+	 */
+	public int size() {
+		return exact.size();
+	}
+
+	/**
+	 * Finds the Switchboard utterances that are almost always tagged as a greeting or a
+	 * closing
+	 * @param acts The dialogue acts of the Switchboard corpus
+	 * @return A map from each trusted utterance to its dialogue act
+	 */
+	public static Map<String, DialogueActTag> switchboardPhrases(List<DialogueAct> acts) {
+		Map<String, Integer> totals = new HashMap<String, Integer>();
+		Map<String, Map<DialogueActTag, Integer>> tagged = new HashMap<String, Map<DialogueActTag, Integer>>();
+		for(DialogueAct act : acts) {
+			String text = normalize(String.join(" ", act.getWords()));
+			totals.merge(text, 1, Integer::sum);
+			if(act.getTag() == DialogueActTag.CONVENTIONAL_OPENING || act.getTag() == DialogueActTag.CONVENTIONAL_CLOSING) {
+				tagged.computeIfAbsent(text, t -> new HashMap<DialogueActTag, Integer>()).merge(act.getTag(), 1, Integer::sum);
+			}
+		}
+
+		Map<String, DialogueActTag> phrases = new TreeMap<String, DialogueActTag>();
+		for(Map.Entry<String, Map<DialogueActTag, Integer>> entry : tagged.entrySet()) {
+			int total = totals.get(entry.getKey());
+			for(Map.Entry<DialogueActTag, Integer> tag : entry.getValue().entrySet()) {
+				if(tag.getValue() >= MIN_SWITCHBOARD_COUNT && tag.getValue() >= MIN_SWITCHBOARD_PRECISION * total) {
+					phrases.put(entry.getKey(), tag.getKey());
+				}
+			}
+		}
+		return phrases;
+	}
+
+	/**
+	 * Lowercases a piece of text, removes its punctuation, collapses runs of the same letter
+	 * and removes extra whitespace
+	 */
+	static String normalize(String text) {
+		StringBuilder str = new StringBuilder(text.length());
+		char last = ' ';
+		for(int i = 0; i < text.length(); i++) {
+			char c = Character.toLowerCase(text.charAt(i));
+			if(Character.isWhitespace(c)) {
+				c = ' ';
+			}
+			else if(!Character.isLetterOrDigit(c) && c != '\'') {
+				continue;
+			}
+			if(c == last && (c == ' ' || Character.isLetter(c))) {
+				continue;
+			}
+			str.append(c);
+			last = c;
+		}
+		return str.toString().trim();
+	}
+
+	/**
+	 * Removes up to two filler words from the end of a normalized text, as long as
+	 * something is left
+	 */
+	private static String stripFillers(String text) {
+		for(int i = 0; i < 2; i++) {
+			int space = text.lastIndexOf(' ');
+			if(space < 0 || !NORMALIZED_FILLERS.contains(text.substring(space + 1))) {
+				break;
+			}
+			text = text.substring(0, space);
+		}
+		return text;
+	}
+
+	/**
+	 * Returns how many edits a normalized input of some length may be from a phrase
+	 */
+	private static int maxDistance(int length) {
+		if(length <= 6) {
+			return 0;
+		}
+		return length <= 11 ? 1 : 2;
+	}
+
+	/**
+	 * A node of the trie while it is being built
+	 */
+	private static class Builder {
+		final TreeMap<Character, Builder> children = new TreeMap<Character, Builder>();
+		DialogueActTag tag;
+		boolean multiWord;
+
+		Node freeze() {
+			Node node = new Node(children.size(), tag, multiWord);
+			int i = 0;
+			for(Map.Entry<Character, Builder> child : children.entrySet()) {
+				node.labels[i] = child.getKey();
+				node.children[i] = child.getValue().freeze();
+				i++;
+			}
+			return node;
+		}
+	}
+
+	/**
+	 * A node of the compiled trie
+	 */
+	private static class Node {
+		final char[] labels;
+		final Node[] children;
+		final DialogueActTag tag;
+		final boolean multiWord;
+
+		Node(int numChildren, DialogueActTag tag, boolean multiWord) {
+			labels = new char[numChildren];
+			children = new Node[numChildren];
+			this.tag = tag;
+			this.multiWord = multiWord;
+		}
+	}
+
+	/**
+	 * A search of the trie for the phrases closest to an input. Each step down the trie
+	 * computes one row of the edit distance table between the input and the path so far, and
+	 * a branch is abandoned as soon as every entry of its row exceeds the maximum distance.
+	 */
+	private static class Search {
+		final String text;
+		final int maxDistance;
+		final boolean singleWord;
+		int bestDistance = Integer.MAX_VALUE;
+		DialogueActTag best;
+		boolean ambiguous;
+
+		Search(String text, int maxDistance, boolean singleWord) {
+			this.text = text;
+			this.maxDistance = maxDistance;
+			this.singleWord = singleWord;
+		}
+
+		void visit(Node node, int[] previous) {
+			for(int e = 0; e < node.labels.length; e++) {
+				char c = node.labels[e];
+				int[] row = new int[previous.length];
+				row[0] = previous[0] + 1;
+				int min = row[0];
+				for(int i = 1; i < row.length; i++) {
+					int substitute = previous[i - 1] + (text.charAt(i - 1) == c ? 0 : 1);
+					row[i] = Math.min(substitute, Math.min(row[i - 1] + 1, previous[i] + 1));
+					min = Math.min(min, row[i]);
+				}
+
+				Node child = node.children[e];
+				int distance = row[row.length - 1];
+				if(child.tag != null && distance <= maxDistance && (child.multiWord || !singleWord)) {
+					offer(child.tag, distance);
+				}
+				if(min <= maxDistance) {
+					visit(child, row);
+				}
+			}
+		}
+
+		void offer(DialogueActTag tag, int distance) {
+			if(distance < bestDistance) {
+				bestDistance = distance;
+				best = tag;
+				ambiguous = false;
+			}
+			else if(distance == bestDistance && tag != best) {
+				ambiguous = true;
+			}
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.features;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.DialogueActTag;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.datag.DialogueAct;
+
+public class GreetingMatcherTest {
+
+	private GreetingMatcher matcher;
+
+	@Before
+	public void setUp() {
+		Map<String, DialogueActTag> phrases = new HashMap<String, DialogueActTag>();
+		for(String greeting : new String[]{"hello", "Hello", "hi", "good morning", "hey"}) {
+			phrases.put(greeting, DialogueActTag.CONVENTIONAL_OPENING);
+		}
+		for(String closing : new String[]{"goodbye", "bye", "bye bye", "talk to you later", "good night"}) {
+			phrases.put(closing, DialogueActTag.CONVENTIONAL_CLOSING);
+		}
+		matcher = new GreetingMatcher(phrases);
+	}
+
+	@Test
+	public void testExact() {
+		assertEquals(DialogueActTag.CONVENTIONAL_OPENING, matcher.match("hello"));
+		assertEquals(DialogueActTag.CONVENTIONAL_OPENING, matcher.match("Good Morning"));
+		assertEquals(DialogueActTag.CONVENTIONAL_CLOSING, matcher.match("bye bye"));
+	}
+
+	@Test
+	public void testNormalization() {
+		assertEquals(DialogueActTag.CONVENTIONAL_OPENING, matcher.match("hiii"));
+		assertEquals(DialogueActTag.CONVENTIONAL_OPENING, matcher.match("HELLOOOO!!"));
+		assertEquals(DialogueActTag.CONVENTIONAL_OPENING, matcher.match("Hello there!!"));
+		assertEquals(DialogueActTag.CONVENTIONAL_CLOSING, matcher.match("  Bye,   bye. "));
+		assertEquals(DialogueActTag.CONVENTIONAL_CLOSING, matcher.match("bye everyone"));
+	}
+
+	@Test
+	public void testNearMatches() {
+		assertEquals(DialogueActTag.CONVENTIONAL_CLOSING, matcher.match("good bye"));
+		assertEquals(DialogueActTag.CONVENTIONAL_CLOSING, matcher.match("goodnight"));
+		assertEquals(DialogueActTag.CONVENTIONAL_CLOSING, matcher.match("talk to ya later"));
+		assertEquals(DialogueActTag.CONVENTIONAL_OPENING, matcher.match("helo"));
+		assertEquals(DialogueActTag.CONVENTIONAL_OPENING, matcher.match("good mornin"));
+	}
+
+	@Test
+	public void testNonMatches() {
+		assertNull(matcher.match("high"));
+		assertNull(matcher.match("i"));
+		assertNull(matcher.match("he"));
+		assertNull(matcher.match("there"));
+		assertNull(matcher.match("hello, how are you doing today?"));
+		assertNull(matcher.match("good evening"));
+		assertNull(matcher.match(""));
+		assertNull(matcher.match("???"));
+		// A single word is only matched exactly, unless it is close to a phrase of several
+		assertNull(matcher.match("hellos"));
+		assertNull(matcher.match("goodbyes"));
+	}
+
+	@Test
+	public void testPhraseFiles() throws Exception {
+		PhraseDictionaries phrases = PhraseDictionaries.load(1, new HashMap<String, DialogueActTag>());
+		assertEquals(DialogueActTag.CONVENTIONAL_OPENING, phrases.matchGreeting("Hello there"));
+		assertEquals(DialogueActTag.CONVENTIONAL_OPENING, phrases.matchGreeting("good mornin"));
+		assertEquals(DialogueActTag.CONVENTIONAL_CLOSING, phrases.matchGreeting("Night"));
+		assertEquals(DialogueActTag.CONVENTIONAL_CLOSING, phrases.matchGreeting("talk to you latr"));
+		assertEquals(DialogueActTag.CONVENTIONAL_CLOSING, phrases.matchGreeting("talk to ya later"));
+		for(String other : new String[]{"Right.", "right right", "Light", "Help!", "They?", "mourning", "help",
+				"they", "", "...", ":)", "?"}) {
+			assertNull(other, phrases.matchGreeting(other));
+		}
+	}
+
+	@Test
+	public void testSwitchboardPhrases() {
+		List<DialogueAct> acts = new ArrayList<DialogueAct>();
+		for(int i = 0; i < 3; i++) {
+			acts.add(new DialogueAct(DialogueActTag.CONVENTIONAL_CLOSING, DialogueActTag.NULL,
+					Arrays.asList("it", "was", "nice", "talking", "to", "you")));
+		}
+		// Mostly not a closing, so it is not trusted
+		for(int i = 0; i < 3; i++) {
+			acts.add(new DialogueAct(DialogueActTag.CONVENTIONAL_CLOSING, DialogueActTag.NULL, Arrays.asList("okay")));
+		}
+		for(int i = 0; i < 10; i++) {
+			acts.add(new DialogueAct(DialogueActTag.AGREEMENTS, DialogueActTag.NULL, Arrays.asList("okay")));
+		}
+
+		Map<String, DialogueActTag> phrases = GreetingMatcher.switchboardPhrases(acts);
+		assertEquals(1, phrases.size());
+		assertEquals(DialogueActTag.CONVENTIONAL_CLOSING, phrases.get("it was nice talking to you"));
+	}
+}
@@ -0,0 +1,210 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.features;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.pugetsound.mathcs.nlp.lang.Conversation;
+import edu.pugetsound.mathcs.nlp.lang.Utterance;
+import edu.pugetsound.mathcs.nlp.util.Deadline;
+import edu.pugetsound.mathcs.nlp.util.Metrics;
+
+/**
+ * Analyzes a line while the user is still typing it, so that less is left to do once the
+ * line is entered.
+ *
+ * A front end calls update() with the text typed so far, as often as it likes, and finish()
+ * with the line once it is entered. In between, the parts of the analysis that do not
+ * depend on the conversation (normalization, greeting detection, the NLP pipeline and the
+ * SPF parse) run in the background on the newest text and their results go into the
+ * analyzer's cache. CoreNLP tags and parses a sentence as a whole, so the work done for an
+ * earlier text cannot be extended to a longer one; instead a text that is being analyzed
+ * is never abandoned, and only the newest of the texts typed in the meantime is analyzed
+ * next. When the user stops typing, the background work catches up with the line, and
+ * finish() only has to classify, resolve and interpret it.
+ *
+ * An instance serves one conversation and can be reused for each of its lines. The
+ * background work may be limited by permits shared with other work (see NLPModel); while
+ * every permit is taken, a text is not analyzed in the background at all.
+ */
+public class IncrementalAnalysis {
+
+	private static final LongAdder SPECULATIONS = Metrics.counter("analyzer.speculation.runs");
+	private static final LongAdder HITS = Metrics.counter("analyzer.speculation.hits");
+	private static final LongAdder MISSES = Metrics.counter("analyzer.speculation.misses");
+	private static final LongAdder FAILURES = Metrics.counter("analyzer.speculation.failures");
+	private static final LongAdder TIMEOUTS = Metrics.counter("analyzer.speculation.timeouts");
+	private static final LongAdder DROPPED = Metrics.counter("analyzer.speculation.dropped");
+
+	protected final TextAnalyzer analyzer;
+	protected final Conversation conversation;
+
+	/**
+	 * Taken while a text is analyzed in the background, or null for no limit
+	 */
+	protected final Semaphore inFlight;
+
+	// The newest text that has not been analyzed yet, the text being analyzed, and the last
+	// text whose analysis finished. Guarded by this.
+	private String pending;
+	private String running;
+	private String finished;
+	private CompletableFuture<Void> current = CompletableFuture.completedFuture(null);
+
+	/**
+	 * Constructs an incremental analysis of the lines of a conversation
+	 * @param analyzer The analyzer of the conversation
+	 * @param conversation The conversation the lines belong to
+	 */
+	public IncrementalAnalysis(TextAnalyzer analyzer, Conversation conversation) {
+		this(analyzer, conversation, null);
+	}
+
+	/**
+	 * Constructs an incremental analysis of the lines of a conversation whose background work
+	 * needs a permit
+	 * @param analyzer The analyzer of the conversation
+	 * @param conversation The conversation the lines belong to
+	 * @param inFlight The permits, or null for no limit
+	 */
+	public IncrementalAnalysis(TextAnalyzer analyzer, Conversation conversation, Semaphore inFlight) {
+		if(analyzer == null || conversation == null) {
+			throw new IllegalArgumentException();
+		}
+		this.analyzer = analyzer;
+		this.conversation = conversation;
+		this.inFlight = inFlight;
+	}
+
+	/**
+	 * Reports the text typed so far. Returns immediately; the text is analyzed in the
+	 * background once the text before it has been.
+	 * @param partial The text typed so far
+	 */
+	public void update(String partial) throws IllegalArgumentException {
+		if(partial == null) {
+			throw new IllegalArgumentException();
+		}
+		synchronized(this) {
+			if(partial.trim().isEmpty() || partial.equals(running) || partial.equals(finished)) {
+				pending = null;
+				return;
+			}
+			pending = partial;
+			if(running == null) {
+				startNext();
+			}
+		}
+	}
+
+	/**
+	 * Analyzes the line the user entered, reusing the background work if it was done for the
+	 * same text. If that work is still running, this waits for it rather than repeating it,
+	 * but not past the deadline: then the work is abandoned (it skips its SPF parse if it has
+	 * not reached it yet) and the line is analyzed from scratch.
+	 * @param line The line the user entered
+	 * @param deadline When the analysis should be finished
+	 * @return The utterance, as TextAnalyzer.analyze() computes it
+	 */
+	public Utterance finish(String line, Deadline deadline) throws IllegalArgumentException {
+		if(line == null || deadline == null) {
+			throw new IllegalArgumentException();
+		}
+		CompletableFuture<Void> speculation = null;
+		boolean hit;
+		synchronized(this) {
+			pending = null;
+			hit = line.equals(finished);
+			if(line.equals(running)) {
+				speculation = current;
+				hit = true;
+			}
+			finished = null;
+		}
+		if(hit) {
+			HITS.increment();
+		}
+		else {
+			MISSES.increment();
+		}
+		if(speculation != null) {
+			try {
+				speculation.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+			}
+			catch(TimeoutException e) {
+				TIMEOUTS.increment();
+				speculation.cancel(true);
+			}
+			catch(ExecutionException | CancellationException e) {
+				// The analysis below repeats the failed work and reports the failure
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return analyzer.analyze(line, conversation, deadline);
+	}
+
+	/**
+	 * Analyzes the line the user entered without a deadline
+	 * @param line The line the user entered
+	 * @return The utterance, as TextAnalyzer.analyze() computes it
+	 */
+	public Utterance finish(String line) throws IllegalArgumentException {
+		return finish(line, Deadline.NONE);
+	}
+
+	/**
+	 * Starts analyzing the pending text. Must hold the lock.
+	 */
+	private void startNext() {
+		String text = pending;
+		pending = null;
+		running = text;
+		current = CompletableFuture.runAsync(() -> speculate(text), analyzer.speculationExecutor);
+	}
+
+	/**
+	 * Analyzes a text in the background, unless no permit is free, and then moves on to the
+	 * newest pending text
+	 */
+	private void speculate(String text) {
+		boolean admitted = inFlight == null || inFlight.tryAcquire();
+		try {
+			if(admitted) {
+				SPECULATIONS.increment();
+				analyzer.speculate(text, this::isSuperseded);
+			}
+			else {
+				DROPPED.increment();
+			}
+		}
+		catch(RuntimeException e) {
+			FAILURES.increment();
+		}
+		finally {
+			if(admitted && inFlight != null) {
+				inFlight.release();
+			}
+			synchronized(this) {
+				finished = admitted ? text : null;
+				running = null;
+				if(pending != null) {
+					startNext();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the user has typed more since the running analysis started, or if
+	 * finish() stopped waiting for it
+	 */
+	private synchronized boolean isSuperseded() {
+		return pending != null || current.isCancelled();
+	}
+}
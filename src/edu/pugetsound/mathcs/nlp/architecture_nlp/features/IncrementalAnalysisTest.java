@@ -0,0 +1,118 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.features;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.pugetsound.mathcs.nlp.lang.Conversation;
+import edu.pugetsound.mathcs.nlp.lang.Utterance;
+import edu.pugetsound.mathcs.nlp.util.Deadline;
+
+public class IncrementalAnalysisTest {
+
+	private static TextAnalyzer shared;
+
+	private BlockingAnalyzer analyzer;
+	private IncrementalAnalysis incremental;
+
+	/**
+	 * An analyzer whose background work waits to be released, and which records whether it
+	 * was superseded by then
+	 */
+	private static class BlockingAnalyzer extends TextAnalyzer {
+		final BlockingQueue<String> started = new LinkedBlockingQueue<String>();
+		final Semaphore release = new Semaphore(0);
+		final Map<String, Boolean> superseded = new ConcurrentHashMap<String, Boolean>();
+
+		BlockingAnalyzer(TextAnalyzer shared) {
+			super(shared, null);
+		}
+
+		@Override
+		void speculate(String input, BooleanSupplier isSuperseded) {
+			started.add(input);
+			release.acquireUninterruptibly();
+			superseded.put(input, isSuperseded.getAsBoolean());
+		}
+
+		@Override
+		public Utterance analyze(String input, Conversation conversation, Deadline deadline) {
+			return new Utterance(input);
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		if(shared == null) {
+			shared = new TextAnalyzer(null);
+		}
+		analyzer = new BlockingAnalyzer(shared);
+		incremental = new IncrementalAnalysis(analyzer, new Conversation());
+	}
+
+	@Test
+	public void testSpeculation() throws Exception {
+		incremental.update("The cat ate");
+		assertEquals("The cat ate", analyzer.started.poll(5, TimeUnit.SECONDS));
+		analyzer.release.release();
+		Utterance h = incremental.finish("The cat ate");
+		assertEquals("The cat ate", h.utterance);
+		assertEquals(Boolean.FALSE, analyzer.superseded.get("The cat ate"));
+	}
+
+	@Test
+	public void testInvalidation() throws Exception {
+		incremental.update("The");
+		assertEquals("The", analyzer.started.poll(5, TimeUnit.SECONDS));
+		incremental.update("The c");
+		incremental.update("The ca");
+		analyzer.release.release();
+		// Only the newest of the texts typed in the meantime is analyzed next
+		assertEquals("The ca", analyzer.started.poll(5, TimeUnit.SECONDS));
+		assertEquals(Boolean.TRUE, analyzer.superseded.get("The"));
+		analyzer.release.release();
+		incremental.finish("The ca");
+		assertEquals(Boolean.FALSE, analyzer.superseded.get("The ca"));
+		assertTrue(analyzer.started.isEmpty());
+	}
+
+	@Test(timeout = 10000)
+	public void testFinishPastDeadline() throws Exception {
+		incremental.update("The cat ate the fish");
+		assertEquals("The cat ate the fish", analyzer.started.poll(5, TimeUnit.SECONDS));
+		long start = System.nanoTime();
+		Utterance h = incremental.finish("The cat ate the fish", Deadline.after(50));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+		assertEquals("The cat ate the fish", h.utterance);
+
+		// The abandoned work is told to skip what it can
+		analyzer.release.release();
+		for(int i = 0; i < 100 && !analyzer.superseded.containsKey("The cat ate the fish"); i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(Boolean.TRUE, analyzer.superseded.get("The cat ate the fish"));
+	}
+
+	@Test
+	public void testNoPermit() {
+		incremental = new IncrementalAnalysis(analyzer, new Conversation(), new Semaphore(0));
+		incremental.update("The cat");
+		assertEquals("The cat", incremental.finish("The cat").utterance);
+		assertTrue(analyzer.started.isEmpty());
+	}
+
+	@Test
+	public void testFinishWithoutSpeculation() {
+		assertEquals("Hi there", incremental.finish("Hi there").utterance);
+		assertTrue(analyzer.started.isEmpty());
+	}
+}
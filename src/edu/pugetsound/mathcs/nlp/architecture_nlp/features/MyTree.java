@@ -49,6 +49,12 @@ public interface MyTree {
 	 */
 	public MyTree[] children();
 	
+	/**
+	 * Returns a copy of the tree rooted at this node that shares no nodes with it
+	 * @return The copy
+	 */
+	public MyTree copy();
+	
 	@Override
 	public String toString();
 }
@@ -1,5 +1,7 @@
 package edu.pugetsound.mathcs.nlp.architecture_nlp.features;
 
+import java.util.List;
+
 import edu.pugetsound.mathcs.nlp.lang.Utterance;
 
 /**
@@ -11,7 +13,36 @@ import edu.pugetsound.mathcs.nlp.lang.Utterance;
  */
 public interface NLPSuite {
 	
-	public void analyze(String sentence, Utterance utterance);
+	/**
+	 * Analyzes a sentence with the profile of AnnotationProfile.semantics()
+	 */
+	public default void analyze(String sentence, Utterance utterance) {
+		analyze(sentence, utterance, AnnotationProfile.semantics());
+	}
+
+	/**
+	 * Analyzes a sentence
+	 * @param sentence The sentence to analyze
+	 * @param utterance The utterance to store the features of the sentence in
+	 * @param profile The features to compute
+	 */
+	public void analyze(String sentence, Utterance utterance, AnnotationProfile profile);
+	
+	/**
+	 * Analyzes many sentences at once with the profile of AnnotationProfile.semantics()
+	 */
+	public default void analyze(List<String> sentences, List<Utterance> utterances) {
+		analyze(sentences, utterances, AnnotationProfile.semantics());
+	}
+
+	/**
+	 * Analyzes many sentences at once, on several threads if the library supports it
+	 * @param sentences The sentences to analyze
+	 * @param utterances The utterances to store the features of the sentences in, in the
+	 * 			same order as the sentences
+	 * @param profile The features to compute
+	 */
+	public void analyze(List<String> sentences, List<Utterance> utterances, AnnotationProfile profile);
 	
 		
 }
@@ -0,0 +1,207 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.features;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.DialogueActTag;
+import edu.pugetsound.mathcs.nlp.util.PathFormat;
+
+/**
+ * A snapshot of the phrase files in models/phrases: slang, contractions, greetings and
+ * closings, together with the normalizer and greeting matcher compiled from them.
+ *
+ * A snapshot is immutable once loaded. TextAnalyzer reads the current snapshot once per
+ * utterance and replaces it as a whole when the files change, so an analysis in progress
+ * never sees a dictionary that is only partly rebuilt.
+ */
+public class PhraseDictionaries {
+
+	/**
+	 * The directory of the phrase files, relative to the project root
+	 */
+	public static final String DIRECTORY = "models/phrases";
+
+	/**
+	 * The names of the phrase files
+	 */
+	public static final List<String> FILES = Collections.unmodifiableList(
+			Arrays.asList("slang.txt", "contractions.txt", "greeting.txt", "closing.txt"));
+
+	/**
+	 * Maps slang to standardized English forms
+	 */
+	protected final Map<String, String> standardizedForms;
+
+	/**
+	 * Maps contractions to common expansions
+	 */
+	protected final Map<String, String> contractionExpansion;
+
+	/**
+	 * Maps greetings and closing expressions to the respective dialogue act tags
+	 */
+	protected final Map<String, DialogueActTag> greetClose;
+
+	/**
+	 * Greetings and closings that do not come from the phrase files (see
+	 * TextAnalyzer.addSwitchboardGreetings()). They are kept when the files are reloaded.
+	 */
+	protected final Map<String, DialogueActTag> extraGreetings;
+
+	/**
+	 * Replaces slang and contractions in a single pass over an utterance
+	 */
+	protected final PhraseNormalizer normalizer;
+
+	/**
+	 * Recognizes greetings and closings that are close to one in greetClose or extraGreetings
+	 */
+	protected final GreetingMatcher greetings;
+
+	private final long version;
+	private final long buildNanos;
+
+	private PhraseDictionaries(long version, Map<String, String> standardizedForms, Map<String, String> contractionExpansion,
+			Map<String, DialogueActTag> greetClose, Map<String, DialogueActTag> extraGreetings, long start) {
+		this.version = version;
+		this.standardizedForms = Collections.unmodifiableMap(standardizedForms);
+		this.contractionExpansion = Collections.unmodifiableMap(contractionExpansion);
+		this.greetClose = Collections.unmodifiableMap(greetClose);
+		this.extraGreetings = Collections.unmodifiableMap(extraGreetings);
+		normalizer = buildNormalizer();
+
+		Map<String, DialogueActTag> phrases = new HashMap<String, DialogueActTag>(greetClose);
+		phrases.putAll(extraGreetings);
+		greetings = new GreetingMatcher(phrases);
+		buildNanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * Reads the phrase files
+	 * @param version The version number of the new snapshot
+	 * @param extraGreetings Greetings and closings to recognize besides those in the files
+	 * @return The snapshot
+	 * @throws IOException if a phrase file cannot be read
+	 */
+	public static PhraseDictionaries load(long version, Map<String, DialogueActTag> extraGreetings) throws IOException {
+		long start = System.nanoTime();
+		HashMap<String, String> standardizedForms = readPairs("slang.txt");
+		HashMap<String, String> contractionExpansion = readPairs("contractions.txt");
+		HashMap<String, DialogueActTag> greetClose = new HashMap<String, DialogueActTag>();
+		readLines("closing.txt", DialogueActTag.CONVENTIONAL_CLOSING, greetClose);
+		readLines("greeting.txt", DialogueActTag.CONVENTIONAL_OPENING, greetClose);
+		return new PhraseDictionaries(version, standardizedForms, contractionExpansion, greetClose,
+				new HashMap<String, DialogueActTag>(extraGreetings), start);
+	}
+
+	/**
+	 * Returns a snapshot without any phrases, used when the phrase files cannot be read
+	 * @param version The version number of the snapshot
+	 */
+	public static PhraseDictionaries empty(long version) {
+		return new PhraseDictionaries(version, new HashMap<String, String>(), new HashMap<String, String>(),
+				new HashMap<String, DialogueActTag>(), new HashMap<String, DialogueActTag>(), System.nanoTime());
+	}
+
+	/**
+	 * Returns a copy of this snapshot that also recognizes some greetings and closings
+	 * @param version The version number of the new snapshot
+	 * @param extra The greetings and closings to add
+	 * @return The new snapshot
+	 */
+	public PhraseDictionaries withGreetings(long version, Map<String, DialogueActTag> extra) {
+		Map<String, DialogueActTag> greetings = new HashMap<String, DialogueActTag>(extraGreetings);
+		greetings.putAll(extra);
+		return new PhraseDictionaries(version, standardizedForms, contractionExpansion, greetClose, greetings, System.nanoTime());
+	}
+
+	/**
+	 * Lowercases a sentence, replaces its slang and expands its contractions
+	 * @param stripped A sentence without ending punctuation
+	 * @return The canonical form of the sentence
+	 */
+	public String canonicalize(String stripped) {
+		return normalizer.normalize(stripped);
+	}
+
+	/**
+	 * Returns the dialogue act of a greeting or closing, see GreetingMatcher.match()
+	 * @param stripped A sentence without ending punctuation
+	 * @return The dialogue act, or null if the sentence is not a greeting or closing
+	 */
+	public DialogueActTag matchGreeting(String stripped) {
+		return greetings.match(stripped);
+	}
+
+	/**
+	 * Returns the version number of this snapshot. Every reload gets a higher number.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns how long it took to read and compile this snapshot in nanoseconds
+	 */
+	public long getBuildNanos() {
+		return buildNanos;
+	}
+
+	/**
+	 * Compiles the slang and contraction dictionaries into a single normalizer. Standardized
+	 * forms are lowercased and lose their ending punctuation to match the rest of the
+	 * canonical utterance.
+	 */
+	private PhraseNormalizer buildNormalizer() {
+		Map<String, String> phrases = new LinkedHashMap<String, String>(contractionExpansion);
+		for(Map.Entry<String, String> slang : standardizedForms.entrySet()) {
+			phrases.put(slang.getKey(), slang.getValue().trim().toLowerCase().replaceAll("\\p{Punct}*$", ""));
+		}
+		return new PhraseNormalizer(phrases);
+	}
+
+	/**
+	 * Reads a file of tab-separated pairs, e.g. slang and its standardized form
+	 */
+	private static HashMap<String, String> readPairs(String file) throws IOException {
+		HashMap<String, String> pairs = new HashMap<String, String>();
+		try(BufferedReader input = new BufferedReader(new FileReader(path(file)))) {
+			String line = input.readLine();
+			while(line != null) {
+				int sep = line.indexOf("\t");
+				if(sep != -1) {
+					pairs.put(line.substring(0, sep), line.substring(sep + 1));
+				}
+				line = input.readLine();
+			}
+		}
+		return pairs;
+	}
+
+	/**
+	 * Reads lines from a text file and adds them to a map with the corresponding dialogue
+	 * act tag. Blank lines are skipped.
+	 */
+	private static void readLines(String file, DialogueActTag tag, Map<String, DialogueActTag> phrases) throws IOException {
+		try(BufferedReader input = new BufferedReader(new FileReader(path(file)))) {
+			String line = input.readLine();
+			while(line != null) {
+				if(!line.trim().isEmpty()) {
+					phrases.put(line, tag);
+				}
+				line = input.readLine();
+			}
+		}
+	}
+
+	private static String path(String file) {
+		return PathFormat.absolutePathFromRoot(DIRECTORY + "/" + file);
+	}
+}
@@ -0,0 +1,217 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.features;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Rewrites phrases (e.g. slang and contractions) in a piece of text in a single pass.
+ *
+ * The phrases are compiled once into an Aho-Corasick automaton, so normalizing a text takes
+ * time proportional to its length (plus the number of phrases found in it) no matter how many
+ * phrases there are. Matching ignores case and only replaces whole words: a phrase must start
+ * and end at a word boundary. When phrases overlap, the one that starts first wins, and of
+ * those that start at the same place the longest wins.
+ *
+ * The automaton is immutable once constructed and can be shared by any number of threads.
+ */
+public class PhraseNormalizer {
+
+	/**
+	 * The characters following each state, sorted, and the states they lead to
+	 */
+	private final char[][] edgeLabels;
+	private final int[][] edgeTargets;
+
+	/**
+	 * The state to fall back to when a character has no edge
+	 */
+	private final int[] failure;
+
+	/**
+	 * The nearest state along the failure links (excluding the state itself) that ends a
+	 * phrase, or -1
+	 */
+	private final int[] nextMatch;
+
+	/**
+	 * The phrase that ends at each state, or -1
+	 */
+	private final int[] phraseAt;
+
+	private final int[] phraseLengths;
+	private final String[] replacements;
+	private final int numPhrases;
+
+	/**
+	 * Compiles a dictionary of phrases
+	 * @param dictionary A map from each phrase to its replacement. Phrases are matched
+	 * 			without regard to case. Replacements are inserted as given.
+	 */
+	public PhraseNormalizer(Map<String, String> dictionary) {
+		// Build the trie with sorted maps, then freeze it into arrays
+		List<TreeMap<Character, Integer>> trie = new ArrayList<TreeMap<Character, Integer>>();
+		trie.add(new TreeMap<Character, Integer>());
+		List<Integer> terminals = new ArrayList<Integer>();
+		terminals.add(-1);
+
+		phraseLengths = new int[dictionary.size()];
+		replacements = new String[dictionary.size()];
+		int phrase = 0;
+		for(Map.Entry<String, String> entry : dictionary.entrySet()) {
+			String key = entry.getKey().toLowerCase();
+			if(key.isEmpty()) {
+				continue;
+			}
+			int state = 0;
+			for(int i = 0; i < key.length(); i++) {
+				Integer next = trie.get(state).get(key.charAt(i));
+				if(next == null) {
+					next = trie.size();
+					trie.add(new TreeMap<Character, Integer>());
+					terminals.add(-1);
+					trie.get(state).put(key.charAt(i), next);
+				}
+				state = next;
+			}
+			if(terminals.get(state) >= 0) {
+				// The same phrase in a different case. The last replacement wins.
+				replacements[terminals.get(state)] = entry.getValue();
+				continue;
+			}
+			phraseLengths[phrase] = key.length();
+			replacements[phrase] = entry.getValue();
+			terminals.set(state, phrase);
+			phrase++;
+		}
+		numPhrases = phrase;
+
+		int numStates = trie.size();
+		edgeLabels = new char[numStates][];
+		edgeTargets = new int[numStates][];
+		phraseAt = new int[numStates];
+		for(int s = 0; s < numStates; s++) {
+			TreeMap<Character, Integer> edges = trie.get(s);
+			edgeLabels[s] = new char[edges.size()];
+			edgeTargets[s] = new int[edges.size()];
+			int e = 0;
+			for(Map.Entry<Character, Integer> edge : edges.entrySet()) {
+				edgeLabels[s][e] = edge.getKey();
+				edgeTargets[s][e] = edge.getValue();
+				e++;
+			}
+			phraseAt[s] = terminals.get(s);
+		}
+
+		// Compute the failure and match links breadth first
+		failure = new int[numStates];
+		nextMatch = new int[numStates];
+		Arrays.fill(nextMatch, -1);
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		for(int child : edgeTargets[0]) {
+			failure[child] = 0;
+			queue.add(child);
+		}
+		while(!queue.isEmpty()) {
+			int s = queue.poll();
+			for(int e = 0; e < edgeLabels[s].length; e++) {
+				char c = edgeLabels[s][e];
+				int child = edgeTargets[s][e];
+				int f = failure[s];
+				while(f != 0 && edge(f, c) < 0) {
+					f = failure[f];
+				}
+				int target = edge(f, c);
+				failure[child] = target < 0 ? 0 : target;
+				nextMatch[child] = phraseAt[failure[child]] >= 0 ? failure[child] : nextMatch[failure[child]];
+				queue.add(child);
+			}
+		}
+	}
+
+	/**
+	 * Replaces every phrase in a piece of text. The text is lowercased first.
+	 * @param text A piece of text
+	 * @return The lowercased text with every phrase replaced
+	 */
+	public String normalize(String text) {
+		String lower = text.toLowerCase();
+		int n = lower.length();
+
+		// The longest phrase starting at each position, found in one pass over the text
+		int[] longest = null;
+		int state = 0;
+		for(int i = 0; i < n; i++) {
+			char c = lower.charAt(i);
+			int next;
+			while((next = edge(state, c)) < 0 && state != 0) {
+				state = failure[state];
+			}
+			state = next < 0 ? 0 : next;
+
+			for(int m = phraseAt[state] >= 0 ? state : nextMatch[state]; m >= 0; m = nextMatch[m]) {
+				int p = phraseAt[m];
+				int start = i + 1 - phraseLengths[p];
+				if(isBoundary(lower, start - 1) && isBoundary(lower, i + 1)) {
+					if(longest == null) {
+						longest = new int[n];
+						Arrays.fill(longest, -1);
+					}
+					if(longest[start] < 0 || phraseLengths[p] > phraseLengths[longest[start]]) {
+						longest[start] = p;
+					}
+				}
+			}
+		}
+		if(longest == null) {
+			return lower;
+		}
+
+		// Replace the leftmost phrases, skipping phrases that overlap a replaced one
+		StringBuilder str = new StringBuilder(n + 16);
+		int i = 0;
+		while(i < n) {
+			int p = longest[i];
+			if(p >= 0) {
+				str.append(replacements[p]);
+				i += phraseLengths[p];
+			}
+			else {
+				str.append(lower.charAt(i));
+				i++;
+			}
+		}
+		return str.toString();
+	}
+
+	/**
+	 * Returns the number of phrases in the dictionary
+	 * @return The number of phrases
+	 */
+	public int size() {
+		return numPhrases;
+	}
+
+	/**
+	 * Returns the state reached from a state on a character, or -1 if there is no such edge
+	 */
+	private int edge(int state, char c) {
+		int i = Arrays.binarySearch(edgeLabels[state], c);
+		return i < 0 ? -1 : edgeTargets[state][i];
+	}
+
+	/**
+	 * Returns true if there is a word boundary just after position i - 1 (that is, position
+	 * i is outside the text or does not hold a word character)
+	 */
+	private static boolean isBoundary(String text, int i) {
+		if(i < 0 || i >= text.length()) {
+			return true;
+		}
+		char c = text.charAt(i);
+		return !(Character.isLetterOrDigit(c) || c == '\'');
+	}
+}
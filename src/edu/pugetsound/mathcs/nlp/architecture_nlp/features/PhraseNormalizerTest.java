@@ -0,0 +1,53 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.features;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PhraseNormalizerTest {
+
+	private PhraseNormalizer normalizer;
+
+	@Before
+	public void setUp() {
+		Map<String, String> phrases = new HashMap<String, String>();
+		phrases.put("can't", "can not");
+		phrases.put("what's", "what is");
+		phrases.put("what's up", "what are you doing");
+		phrases.put("Yeah", "yes");
+		phrases.put("he", "HE");
+		normalizer = new PhraseNormalizer(phrases);
+	}
+
+	@Test
+	public void testNoMatch() {
+		assertEquals(5, normalizer.size());
+		assertEquals("nothing to see here", normalizer.normalize("Nothing to see here"));
+		assertEquals("", normalizer.normalize(""));
+	}
+
+	@Test
+	public void testIgnoresCase() {
+		assertEquals("yes i can not", normalizer.normalize("YEAH I Can't"));
+		assertEquals("yes yes", normalizer.normalize("yeah yEaH"));
+	}
+
+	@Test
+	public void testLongestMatchWins() {
+		assertEquals("what are you doing", normalizer.normalize("what's up"));
+		assertEquals("what is going on", normalizer.normalize("what's going on"));
+		assertEquals("so what are you doing, what is new", normalizer.normalize("so what's up, what's new"));
+	}
+
+	@Test
+	public void testWholeWordsOnly() {
+		assertEquals("the hen said HE was there", normalizer.normalize("the hen said he was there"));
+		assertEquals("she can'tt", normalizer.normalize("she can'tt"));
+		assertEquals("HE, HE", normalizer.normalize("he, he"));
+		assertEquals("what is upper", normalizer.normalize("what's upper"));
+	}
+}
@@ -0,0 +1,186 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.features;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import edu.pugetsound.mathcs.nlp.lang.UtteranceField;
+
+/**
+ * Runs the stages of analyzing an utterance in the order their data requires rather than
+ * one after the other.
+ *
+ * Each stage declares the fields of the Utterance it requires and the fields it produces.
+ * A stage starts on the executor as soon as the stages producing its required fields have
+ * finished, so independent stages overlap. Stages must be added after the stages they
+ * depend on, which keeps the graph acyclic, and no two stages may produce the same field.
+ * A stage that changes a field another stage reads must require a field that the reader
+ * produces, so that it runs after the reader.
+ *
+ * If a stage throws, the stages that depend on it do not run and run() rethrows the
+ * exception once every other stage has finished.
+ */
+public class StageGraph {
+
+	private final EnumSet<UtteranceField> available;
+	private final EnumMap<UtteranceField, Stage> producers = new EnumMap<UtteranceField, Stage>(UtteranceField.class);
+	private final List<Stage> stages = new ArrayList<Stage>();
+
+	/**
+	 * Constructs an empty graph
+	 * @param available The fields that are already filled in before any stage runs
+	 */
+	public StageGraph(EnumSet<UtteranceField> available) {
+		this.available = EnumSet.copyOf(available);
+	}
+
+	/**
+	 * Adds a stage to the graph
+	 * @param name The name of the stage
+	 * @param requires The fields the stage reads
+	 * @param produces The fields the stage fills in
+	 * @param body Runs the stage
+	 * @return This graph
+	 * @throws IllegalArgumentException if a required field is produced by no earlier stage
+	 * 			or a produced field is already produced by another stage
+	 */
+	public StageGraph add(String name, EnumSet<UtteranceField> requires, EnumSet<UtteranceField> produces,
+			Runnable body) throws IllegalArgumentException {
+		Stage stage = new Stage(name, body);
+		for(UtteranceField field : requires) {
+			if(producers.containsKey(field)) {
+				stage.dependencies.add(producers.get(field));
+			}
+			else if(!available.contains(field)) {
+				throw new IllegalArgumentException("Stage " + name + " requires " + field + ", which no earlier stage produces");
+			}
+		}
+		for(UtteranceField field : produces) {
+			if(available.contains(field) || producers.containsKey(field)) {
+				throw new IllegalArgumentException("Stage " + name + " produces " + field + ", which is already produced");
+			}
+			producers.put(field, stage);
+		}
+		stages.add(stage);
+		return this;
+	}
+
+	/**
+	 * Runs every stage and waits for all of them to finish
+	 * @param executor The executor the stages run on
+	 * @throws RuntimeException the first exception thrown by a stage, in the order the stages
+	 * 			were added
+	 */
+	public void run(Executor executor) {
+		for(Stage stage : stages) {
+			CompletableFuture<?>[] dependencies = new CompletableFuture<?>[stage.dependencies.size()];
+			for(int i = 0; i < dependencies.length; i++) {
+				dependencies[i] = stage.dependencies.get(i).future;
+			}
+			stage.future = dependencies.length == 0
+					? CompletableFuture.runAsync(stage.body, executor)
+					: CompletableFuture.allOf(dependencies).thenRunAsync(stage.body, executor);
+		}
+
+		RuntimeException failure = null;
+		for(Stage stage : stages) {
+			try {
+				stage.future.join();
+			}
+			catch(CompletionException e) {
+				// A stage whose dependency failed reports the same exception again
+				if(failure == null) {
+					failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+				}
+			}
+		}
+		if(failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Runs a stage body on each of several items at the same time, e.g. on each sentence of
+	 * an utterance, and waits for all of them to finish. The calling thread runs every item
+	 * that no thread of the executor has started yet, so this can be called from a stage
+	 * running on the same executor without waiting for threads that are busy elsewhere.
+	 * @param items The items
+	 * @param body Runs the stage body on one item
+	 * @param executor The executor that helps run the items
+	 * @throws RuntimeException the first exception thrown for an item, in the order of the
+	 * 			items, once every item has finished
+	 */
+	public static <T> void forEach(List<T> items, Consumer<T> body, Executor executor) {
+		List<AtomicBoolean> claimed = new ArrayList<AtomicBoolean>(items.size());
+		List<CompletableFuture<Void>> done = new ArrayList<CompletableFuture<Void>>(items.size());
+		for(int i = 0; i < items.size(); i++) {
+			claimed.add(new AtomicBoolean());
+			done.add(new CompletableFuture<Void>());
+		}
+		for(int i = 1; i < items.size(); i++) {
+			int item = i;
+			executor.execute(() -> runItem(items, body, claimed, done, item));
+		}
+		for(int i = 0; i < items.size(); i++) {
+			runItem(items, body, claimed, done, i);
+		}
+
+		RuntimeException failure = null;
+		for(CompletableFuture<Void> item : done) {
+			try {
+				item.join();
+			}
+			catch(CompletionException e) {
+				if(failure == null) {
+					failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+				}
+			}
+		}
+		if(failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Runs the body on an item unless another thread already has
+	 */
+	private static <T> void runItem(List<T> items, Consumer<T> body, List<AtomicBoolean> claimed,
+			List<CompletableFuture<Void>> done, int i) {
+		if(!claimed.get(i).compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			body.accept(items.get(i));
+			done.get(i).complete(null);
+		}
+		catch(RuntimeException | Error e) {
+			done.get(i).completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * A single stage and the stages it has to wait for
+	 */
+	private static class Stage {
+		final String name;
+		final Runnable body;
+		final List<Stage> dependencies = new ArrayList<Stage>();
+		CompletableFuture<Void> future;
+
+		Stage(String name, Runnable body) {
+			this.name = name;
+			this.body = body;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+}
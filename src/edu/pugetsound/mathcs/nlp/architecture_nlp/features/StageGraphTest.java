@@ -0,0 +1,134 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.features;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import edu.pugetsound.mathcs.nlp.lang.UtteranceField;
+import edu.pugetsound.mathcs.nlp.util.OrderedWorkQueue;
+
+public class StageGraphTest {
+
+	private final ExecutorService pool = OrderedWorkQueue.newDaemonPool(4, "stage-test");
+
+	@After
+	public void tearDown() {
+		pool.shutdownNow();
+	}
+
+	@Test
+	public void testDependenciesRunFirst() {
+		List<String> order = new CopyOnWriteArrayList<String>();
+		new StageGraph(EnumSet.of(UtteranceField.TEXT))
+				.add("tokens", EnumSet.of(UtteranceField.TEXT), EnumSet.of(UtteranceField.TOKENS), () -> order.add("tokens"))
+				.add("parse", EnumSet.of(UtteranceField.TOKENS), EnumSet.of(UtteranceField.PARSE), () -> order.add("parse"))
+				.add("tag", EnumSet.of(UtteranceField.TOKENS, UtteranceField.PARSE), EnumSet.of(UtteranceField.DA_TAG),
+						() -> order.add("tag"))
+				.run(pool);
+		assertEquals(3, order.size());
+		assertEquals("tokens", order.get(0));
+		assertEquals("parse", order.get(1));
+		assertEquals("tag", order.get(2));
+	}
+
+	@Test
+	public void testIndependentStagesOverlap() {
+		// Each stage waits for the other to start, so this only finishes if they overlap
+		CountDownLatch started = new CountDownLatch(2);
+		Runnable body = () -> {
+			started.countDown();
+			try {
+				assertTrue(started.await(10, TimeUnit.SECONDS));
+			}
+			catch(InterruptedException e) {
+				fail();
+			}
+		};
+		new StageGraph(EnumSet.of(UtteranceField.TEXT, UtteranceField.CANONICAL))
+				.add("nlp", EnumSet.of(UtteranceField.TEXT), EnumSet.of(UtteranceField.PARSE), body)
+				.add("spf", EnumSet.of(UtteranceField.CANONICAL), EnumSet.of(UtteranceField.SPF_PARSE), body)
+				.run(pool);
+		assertEquals(0, started.getCount());
+	}
+
+	@Test
+	public void testFailureSkipsDependents() {
+		List<String> ran = new CopyOnWriteArrayList<String>();
+		StageGraph graph = new StageGraph(EnumSet.of(UtteranceField.TEXT, UtteranceField.CANONICAL))
+				.add("nlp", EnumSet.of(UtteranceField.TEXT), EnumSet.of(UtteranceField.PARSE), () -> {
+					throw new IllegalStateException("broken");
+				})
+				.add("tag", EnumSet.of(UtteranceField.PARSE), EnumSet.of(UtteranceField.DA_TAG), () -> ran.add("tag"))
+				.add("spf", EnumSet.of(UtteranceField.CANONICAL), EnumSet.of(UtteranceField.SPF_PARSE), () -> ran.add("spf"));
+		try {
+			graph.run(pool);
+			fail("Expected the exception of the failed stage");
+		}
+		catch(IllegalStateException e) {
+			assertEquals("broken", e.getMessage());
+		}
+		assertEquals(1, ran.size());
+		assertEquals("spf", ran.get(0));
+	}
+
+	@Test
+	public void testForEachFromBusyExecutor() {
+		// Every thread of the pool is busy, so the calling thread has to run all the items
+		ExecutorService single = OrderedWorkQueue.newDaemonPool(1, "stage-test-single");
+		CountDownLatch release = new CountDownLatch(1);
+		single.execute(() -> {
+			try {
+				release.await();
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		List<String> ran = new CopyOnWriteArrayList<String>();
+		StageGraph.forEach(Arrays.asList("a", "b", "c"), ran::add, single);
+		release.countDown();
+		single.shutdown();
+		assertEquals(3, ran.size());
+		assertTrue(ran.containsAll(Arrays.asList("a", "b", "c")));
+	}
+
+	@Test
+	public void testForEachFailure() {
+		List<String> ran = new CopyOnWriteArrayList<String>();
+		try {
+			StageGraph.forEach(Arrays.asList("a", "b", "c"), item -> {
+				if(item.equals("b")) {
+					throw new IllegalStateException(item);
+				}
+				ran.add(item);
+			}, pool);
+			fail("Expected the exception of the failed item");
+		}
+		catch(IllegalStateException e) {
+			assertEquals("b", e.getMessage());
+		}
+		assertEquals(2, ran.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingProducer() {
+		new StageGraph(EnumSet.of(UtteranceField.TEXT))
+				.add("tag", EnumSet.of(UtteranceField.TOKENS), EnumSet.of(UtteranceField.DA_TAG), () -> {});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTwoProducers() {
+		new StageGraph(EnumSet.of(UtteranceField.TEXT))
+				.add("a", EnumSet.of(UtteranceField.TEXT), EnumSet.of(UtteranceField.TOKENS), () -> {})
+				.add("b", EnumSet.of(UtteranceField.TEXT), EnumSet.of(UtteranceField.TOKENS), () -> {});
+	}
+}
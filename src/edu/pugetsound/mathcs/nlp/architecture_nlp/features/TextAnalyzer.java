@@ -1,20 +1,45 @@
 package edu.pugetsound.mathcs.nlp.architecture_nlp.features;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Scanner;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 import edu.pugetsound.mathcs.nlp.lang.*;
+import edu.pugetsound.mathcs.nlp.util.Deadline;
+import edu.pugetsound.mathcs.nlp.util.FileWatcher;
+import edu.pugetsound.mathcs.nlp.util.LatencyHistogram;
 import edu.pugetsound.mathcs.nlp.util.Logger;
+import edu.pugetsound.mathcs.nlp.util.Metrics;
+import edu.pugetsound.mathcs.nlp.util.OrderedWorkQueue;
+import edu.pugetsound.mathcs.nlp.util.ParallelLoader;
 import edu.pugetsound.mathcs.nlp.util.PathFormat;
 import edu.pugetsound.mathcs.nlp.architecture_nlp.features.spf.SPFSemanticAnalyzer;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.Action;
 import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.DialogueActTag;
 import edu.pugetsound.mathcs.nlp.architecture_nlp.datag.DAClassifier;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.datag.DialogueAct;
 import edu.pugetsound.mathcs.nlp.architecture_nlp.features.stanford.StanfordSuite;
 import edu.pugetsound.mathcs.nlp.kb.KBController;
+import edu.pugetsound.mathcs.nlp.kb.MyPredicate;
 
 
 /**
@@ -29,21 +54,15 @@ public class TextAnalyzer {
 	protected NLPSuite nlpAnalyzer;
 	
 	/**
-	 * Maps slang to standardized English forms
+	 * The current slang, contraction, greeting and closing dictionaries. The snapshot is
+	 * replaced as a whole when the phrase files change on disk.
 	 */
-	protected HashMap<String, String> standardizedForms;
+	protected AtomicReference<PhraseDictionaries> phrases;
 
 	/**
-	 * Maps greetings and closing expressions to the respective
-	 * dialogue act tags
+	 * Reloads the phrase dictionaries when the phrase files change
 	 */
-	protected HashMap<String, DialogueActTag> greetClose;
-	
-	/**
-	 * Maps contractions to common expansions
-	 */
-	
-	protected HashMap<String,String> contractionExpansion;
+	protected FileWatcher phraseWatcher;
 
 	/**
 	 * A semantic analyzer to translate from utterances to a first-order representation
@@ -51,9 +70,10 @@ public class TextAnalyzer {
 	protected SemanticAnalyzer folSemAnalyzer;
 	
 	/**
-	 * A semantic analyzer
+	 * A semantic analyzer based on SPF. It is not needed to answer the first turns, so it
+	 * finishes loading in the background and is skipped until it is ready.
 	 */
-	protected SemanticAnalyzer spfSemAnalyzer;
+	protected CompletableFuture<SemanticAnalyzer> spfSemAnalyzer;
 	
 
 	/**
@@ -66,25 +86,255 @@ public class TextAnalyzer {
 	 */
 	protected DAClassifier dialogueClassifier;
 
+	/**
+	 * Runs the SPF parser when a turn has a deadline, so the parse can be abandoned once
+	 * the deadline passes
+	 */
+	protected ExecutorService semanticExecutor;
+
+	/**
+	 * The number of SPF parses on the semantic executor that have not finished, including
+	 * the ones abandoned at their deadline
+	 */
+	protected AtomicInteger spfParses;
+
+	/**
+	 * Runs the stages of analyze() that can run at the same time
+	 */
+	protected ExecutorService stageExecutor;
+
+	/**
+	 * Analyzes lines in the background while they are being typed, see IncrementalAnalysis
+	 */
+	protected ExecutorService speculationExecutor;
 
+	/**
+	 * Loads the components of the analyzer at the same time
+	 */
+	protected ParallelLoader loader;
+
+	/**
+	 * Decides how much of the analysis each turn needs
+	 */
+	protected TurnRouter router;
 
 	/**
-	 * Creates a new TextAnalyzer
+	 * Remembers the NLP and SPF features of recently seen utterances
+	 */
+	protected AnalysisCache cache;
+
+	/**
+	 * The most memory the analysis cache may use, estimated
+	 */
+	public static final long CACHE_BYTES = 32L * 1024 * 1024;
+
+	/**
+	 * The number of threads of the semantic executor
+	 */
+	public static final int SPF_THREADS = Runtime.getRuntime().availableProcessors();
+
+
+	// Latency of each stage of analyze() and how often it ends early
+	private static final LatencyHistogram PREPROCESS_LATENCY = Metrics.histogram("analyzer.preprocess");
+	private static final LatencyHistogram NLP_LATENCY = Metrics.histogram("analyzer.nlp");
+	private static final LatencyHistogram CLASSIFIER_LATENCY = Metrics.histogram("analyzer.classifier");
+	private static final LatencyHistogram ANAPHORA_LATENCY = Metrics.histogram("analyzer.anaphora");
+	private static final LatencyHistogram CFG_LATENCY = Metrics.histogram("analyzer.cfg_semantics");
+	private static final LatencyHistogram SPF_LATENCY = Metrics.histogram("analyzer.spf_semantics");
+	private static final LatencyHistogram TOTAL_LATENCY = Metrics.histogram("analyzer.total");
+	private static final LongAdder GREETINGS = Metrics.counter("analyzer.greetings");
+	private static final LongAdder SHORT_CIRCUITS = Metrics.counter("analyzer.short_circuits");
+	private static final LongAdder SEMANTIC_FAILURES = Metrics.counter("analyzer.semantic_failures");
+	private static final LatencyHistogram BATCH_LATENCY = Metrics.histogram("analyzer.batch");
+	private static final LongAdder BATCH_UTTERANCES = Metrics.counter("analyzer.batch_utterances");
+	private static final LatencyHistogram PHRASES_REBUILD_LATENCY = Metrics.histogram("analyzer.phrases.rebuild");
+	private static final LongAdder PHRASES_RELOADS = Metrics.counter("analyzer.phrases.reloads");
+	private static final LongAdder PHRASES_RELOAD_FAILURES = Metrics.counter("analyzer.phrases.reload_failures");
+	private static final LongAdder[] TIER_TURNS = new LongAdder[AnalysisTier.values().length];
+	private static final EnumMap<AnalysisStage, LongAdder> SKIPPED = new EnumMap<AnalysisStage, LongAdder>(AnalysisStage.class);
+	static {
+		for(AnalysisTier tier : AnalysisTier.values()){
+			TIER_TURNS[tier.ordinal()] = Metrics.counter("analyzer.tier." + tier.name().toLowerCase());
+		}
+		for(AnalysisStage stage : AnalysisStage.values()){
+			SKIPPED.put(stage, Metrics.counter("analyzer.skipped." + stage.name().toLowerCase()));
+		}
+	}
+
+	/**
+	 * The number of texts analyzeBatch() sends through the NLP pipeline and the classifier
+	 * at once
+	 */
+	public static final int BATCH_SIZE = 256;
+
+	/**
+	 * Matches the end of a sentence followed by more text. A text that contains it may hold
+	 * several sentences, and is only split into sentences by the NLP pipeline.
+	 */
+	private static final Pattern SENTENCE_BREAK = Pattern.compile("[.!?]\\s+\\S");
+
+	/**
+	 * Creates a new TextAnalyzer. The NLP pipeline, the dialogue act classifier, the
+	 * phrase files and the SPF parser are loaded at the same time. The constructor returns
+	 * once everything but the SPF parser is loaded, see isReady(). The phrase files are
+	 * reloaded whenever they change, see reloadPhrases().
 	 */
 	public TextAnalyzer(KBController kb){
-		nlpAnalyzer = new StanfordSuite();		
+		phrases = new AtomicReference<PhraseDictionaries>();
+		semanticExecutor = OrderedWorkQueue.newDaemonPool(SPF_THREADS, "spf");
+		spfParses = new AtomicInteger();
+		stageExecutor = OrderedWorkQueue.newDaemonPool(Runtime.getRuntime().availableProcessors(), "analyzer");
+		speculationExecutor = OrderedWorkQueue.newDaemonPool(Runtime.getRuntime().availableProcessors(), "speculation");
+		cache = new AnalysisCache(CACHE_BYTES);
+
+		loader = new ParallelLoader();
+		CompletableFuture<NLPSuite> nlp = loader.load("CoreNLP pipeline", () -> new StanfordSuite());
+		CompletableFuture<DAClassifier> classifier = loader.load("dialogue act classifier",
+				() -> new DAClassifier(DAClassifier.Mode.DUMB_NAIVE_BAYES));
+		CompletableFuture<Void> phraseFiles = loader.load("phrase files", () -> {
+			try {
+				phrases.set(PhraseDictionaries.load(1, new HashMap<String, DialogueActTag>()));
+			}
+			catch(IOException e){
+				System.out.println(e);
+				phrases.set(PhraseDictionaries.empty(1));
+			}
+			return null;
+		});
+		CompletableFuture<TurnRouter> routing = loader.load("routing rules", () -> {
+			try {
+				return TurnRouter.load();
+			}
+			catch(IOException e){
+				System.out.println(e);
+				return TurnRouter.empty();
+			}
+		});
+		spfSemAnalyzer = loader.load("SPF parser", () -> new SPFSemanticAnalyzer());
+		loader.shutdown();
+
 		folSemAnalyzer = new CFGSemanticAnalyzer(kb);
-		spfSemAnalyzer = new SPFSemanticAnalyzer();
 		anaphoraAnalyzer = new AnaphoraAnalyzer();
-		standardizedForms = new HashMap<String, String>();
-		contractionExpansion = new HashMap<String, String>();
-		greetClose = new HashMap<String, DialogueActTag>();
-		dialogueClassifier = new DAClassifier(DAClassifier.Mode.DUMB_NAIVE_BAYES);
-
-		HashReader reader = new HashReader();
-		reader.populateGreeting();
-		reader.populateStandardForms();
-		reader.populateContractions();
+
+		nlpAnalyzer = ParallelLoader.await(nlp);
+		dialogueClassifier = ParallelLoader.await(classifier);
+		ParallelLoader.await(phraseFiles);
+		router = ParallelLoader.await(routing);
+
+		try {
+			phraseWatcher = new FileWatcher(Paths.get(PathFormat.absolutePathFromRoot(PhraseDictionaries.DIRECTORY)),
+					PhraseDictionaries.FILES, this::reloadPhrases, "phrase-watcher");
+		}
+		catch(IOException e){
+			System.out.println("Unable to watch the phrase files: " + e);
+		}
+	}
+
+	/**
+	 * Creates a new TextAnalyzer for a single conversation that shares the heavy, read-mostly
+	 * components of an existing analyzer: the NLP pipeline, the SPF parser, the dialogue act
+	 * classifier and the phrase dictionaries. Components that hold per-utterance state (or
+	 * that write to a conversation's knowledge base) are created fresh for this analyzer.
+	 *
+	 * @param shared An analyzer whose heavy components should be reused
+	 * @param kb The knowledge base of the conversation this analyzer serves
+	 */
+	public TextAnalyzer(TextAnalyzer shared, KBController kb){
+		nlpAnalyzer = shared.nlpAnalyzer;
+		spfSemAnalyzer = shared.spfSemAnalyzer;
+		dialogueClassifier = shared.dialogueClassifier;
+		semanticExecutor = shared.semanticExecutor;
+		spfParses = shared.spfParses;
+		stageExecutor = shared.stageExecutor;
+		speculationExecutor = shared.speculationExecutor;
+		loader = shared.loader;
+		cache = shared.cache;
+		phrases = shared.phrases;
+		router = shared.router;
+
+		folSemAnalyzer = new CFGSemanticAnalyzer(kb);
+		anaphoraAnalyzer = new AnaphoraAnalyzer();
+	}
+
+	/**
+	 * Returns the classifier that tags utterances with dialogue acts
+	 * @return The dialogue act classifier
+	 */
+	public DAClassifier getDialogueClassifier(){
+		return dialogueClassifier;
+	}
+
+	/**
+	 * Returns true once every component of the analyzer has finished loading
+	 * @return True if every component has finished loading
+	 */
+	public boolean isReady(){
+		return loader.isReady();
+	}
+
+	/**
+	 * Blocks until every component of the analyzer has finished loading
+	 */
+	public void awaitReady(){
+		loader.awaitReady();
+	}
+
+	/**
+	 * Returns how long each component of the analyzer took to load
+	 * @return A map from the name of each loaded component to its load time in nanoseconds
+	 */
+	public Map<String, Long> getLoadTimes(){
+		return loader.getLoadTimes();
+	}
+
+	/**
+	 * Also recognizes the Switchboard utterances that are almost always tagged as greetings
+	 * or closings (see GreetingMatcher.switchboardPhrases()). Analyzers that share this one
+	 * see the new phrases too, and they are kept when the phrase files are reloaded.
+	 * @param acts The dialogue acts of the Switchboard corpus
+	 */
+	public void addSwitchboardGreetings(List<DialogueAct> acts){
+		Map<String, DialogueActTag> extra = GreetingMatcher.switchboardPhrases(acts);
+		synchronized(phrases){
+			PhraseDictionaries current = phrases.get();
+			phrases.set(current.withGreetings(current.getVersion() + 1, extra));
+		}
+	}
+
+	/**
+	 * Reads the phrase files again and swaps the new dictionaries in. Analyses already in
+	 * progress finish with the dictionaries they started with. If a file cannot be read,
+	 * the current dictionaries are kept. This runs on its own whenever a phrase file changes.
+	 * @return True if the new dictionaries were swapped in
+	 */
+	public boolean reloadPhrases(){
+		synchronized(phrases){
+			PhraseDictionaries current = phrases.get();
+			try {
+				PhraseDictionaries next = PhraseDictionaries.load(current.getVersion() + 1, current.extraGreetings);
+				phrases.set(next);
+				PHRASES_REBUILD_LATENCY.record(next.getBuildNanos());
+				PHRASES_RELOADS.increment();
+				System.out.println(String.format("Reloaded the phrase files: version %d, built in %.1f ms",
+						next.getVersion(), next.getBuildNanos() / 1e6));
+				return true;
+			}
+			catch(IOException e){
+				PHRASES_RELOAD_FAILURES.increment();
+				System.out.println("Unable to reload the phrase files, keeping version " + current.getVersion());
+				System.out.println(e);
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Returns the version of the phrase dictionaries in use. It starts at 1 and grows every
+	 * time the dictionaries are replaced.
+	 * @return The version number
+	 */
+	public long getPhraseVersion(){
+		return phrases.get().getVersion();
 	}
 
 	/**
@@ -95,16 +345,59 @@ public class TextAnalyzer {
 	 * 		   semantic, and pragmatic features of the input
 	 *
 	 * <br>
-	 * <b>Preconditions:</b>
-	 * <ul>
-	 * 	<li>The input contains a single sentence.</li>
-	 * </ul>
+	 * If the input contains more than one sentence, each sentence is also analyzed on its
+	 * own and stored in Utterance.sentences. The sentences are resolved and interpreted at
+	 * the same time, and the utterance merges their features.
+	 *
+	 * <br>
+	 * Turns that do not need every stage, like "uh huh" or "okay", are not parsed or not
+	 * analyzed at all (see TurnRouter). The tier a turn was routed to is recorded in
+	 * Utterance.tier.
 	 */
 	public Utterance analyze(String input, Conversation conversation) throws IllegalArgumentException {
-		if(input == null || conversation == null){
+		return analyze(input, conversation, Deadline.NONE);
+	}
+
+	/**
+	 * Computes syntactic, semantic, and pragmatic features of a piece of text within a time
+	 * budget. The NLP pipeline and the dialogue act classifier run on every turn that is not
+	 * in the CHEAP tier since the brain needs the dialogue act to choose an action. Anaphora resolution and semantic analysis
+	 * are skipped once the deadline has passed, and a semantic parse still running at the
+	 * deadline is abandoned. Skipped stages are recorded in Utterance.skippedStages.
+	 *
+	 * @param input a piece of text
+	 * @param conversation the conversation so far
+	 * @param deadline when the analysis should be finished
+	 * @return an Utterance object that encapsulates the features of the input that could be
+	 * 		   computed in time
+	 */
+	public Utterance analyze(String input, Conversation conversation, Deadline deadline) throws IllegalArgumentException {
+		return analyze(input, conversation, deadline, AnnotationProfile.semantics());
+	}
+
+	/**
+	 * Computes the features of a piece of text that a profile needs. With CLASSIFY_ONLY the
+	 * NLP pipeline only tokenizes the text, the classifier tags it and the other stages are
+	 * skipped (and listed in Utterance.skippedStages), which suits turns whose dialogue act
+	 * is all that will be read. The other profiles run every stage as analyze() does;
+	 * FAST_SEMANTICS trades some parsing accuracy for latency. analyze() uses the profile the
+	 * deployment chose, see AnnotationProfile.semantics(). The profile is the most the turn
+	 * gets: TurnRouter may still decide that it needs less.
+	 *
+	 * @param input a piece of text
+	 * @param conversation the conversation so far
+	 * @param deadline when the analysis should be finished
+	 * @param profile the features the NLP pipeline computes
+	 * @return an Utterance object that encapsulates the features of the input that could be
+	 * 		   computed in time
+	 */
+	public Utterance analyze(String input, Conversation conversation, Deadline deadline, AnnotationProfile profile) throws IllegalArgumentException {
+		if(input == null || conversation == null || deadline == null || profile == null){
 			throw new IllegalArgumentException();
 		}
-		long start, stop;
+		long begin = System.nanoTime();
+		long start;
+		PhraseDictionaries dictionaries = phrases.get();
 		
 		/*
 		 * The order in which the analysis is done is extremely important! Certain analyzers
@@ -115,131 +408,534 @@ public class TextAnalyzer {
 		/*----------------------------------------------------
 		 * STEP ONE: Strip the punctuation from the end
 		 *----------------------------------------------------*/
-		start = System.currentTimeMillis();
+		start = begin;
 		String stripped = input.replaceAll("\\p{Punct}*$", "");
-		stop = System.currentTimeMillis();
-		if(Logger.debug()) {
-			System.out.println("\tStrip punctuation: " + (stop-start) + " milliseconds");
-		}
-
 
-		/*----------------------------------------------------
-		 * STEP TWO: Replace any slang with a standardized form
-		 *----------------------------------------------------*/
-		start = System.currentTimeMillis();
-		for(String slang : standardizedForms.keySet()) {
-			stripped.replace(slang, standardizedForms.get(slang));
-			input.replace(slang, standardizedForms.get(slang));
-		}
-		stop = System.currentTimeMillis();
-		if(Logger.debug()) {
-			System.out.println("\tStandardized forms: " + (stop-start) + " milliseconds");
-		}
-		
 
 		/*--------------------------------------------------------
-		 * STEP THREE: Create the actual utterance data structure 
+		 * STEP TWO: Create the actual utterance data structure 
 		 *-------------------------------------------------------*/
-		start = System.currentTimeMillis();		
 		Utterance h = new Utterance(input);
 		storePunctuation(h, input);
-		stop = System.currentTimeMillis();
-		if(Logger.debug()) {
-			System.out.println("\tStrip punctuation: " + (stop-start) + " milliseconds");
-		}
 
 				
-		/*--------------------------------------------------------
-		 * STEP FOUR: Lowercase utterance and remove contractions 
-		 *-------------------------------------------------------*/
-		start = System.currentTimeMillis();		
-		String canonical = stripped.toLowerCase();
-		String[] words = canonical.split(" ");
-		for(String w : words) {
-			if(contractionExpansion.containsKey(w)) {
-				canonical = canonical.replaceAll(w, contractionExpansion.get(w));
-			}
-		}
-		h.canonicalUtterance = canonical;
-		stop = System.currentTimeMillis();
-		if(Logger.debug()) {
-			System.out.println("\tContraction?Expansion?: " + (stop-start) + " milliseconds");
-		}
+		/*------------------------------------------------------------------
+		 * STEP THREE: Lowercase utterance, replace slang with a standardized
+		 * form and expand contractions
+		 *-----------------------------------------------------------------*/
+		h.canonicalUtterance = dictionaries.canonicalize(stripped);
 
 				
 		/*--------------------------------------------------------------------
-		 * STEP FIVE: Check if the utterance is a standard greeting or closing 
+		 * STEP FOUR: Check if the utterance is (close to) a standard greeting or closing,
+		 * and otherwise decide how much of the analysis it needs (see TurnRouter)
 		 *--------------------------------------------------------------------*/		
-		start = System.currentTimeMillis();		
-		if(greetClose.containsKey(stripped)){
-			h.daTag = greetClose.get(stripped);
+		DialogueActTag greeting = dictionaries.matchGreeting(stripped);
+		if(greeting != null){
+			h.daTag = greeting;
+			h.tier = AnalysisTier.CHEAP;
+			PREPROCESS_LATENCY.recordSince(start);
+			GREETINGS.increment();
+			TIER_TURNS[h.tier.ordinal()].increment();
+			TOTAL_LATENCY.recordSince(begin);
 			return h;
 		}
-		stop = System.currentTimeMillis();
-		if(Logger.debug()) {
-			System.out.println("\tGreeting?Closing?: " + (stop-start) + " milliseconds");
+		TurnRouter.Route route = router.route(h, conversation);
+		h.tier = route.tier;
+		if(h.tier == AnalysisTier.FULL && !profile.covers(AnnotationProfile.FAST_SEMANTICS)){
+			h.tier = AnalysisTier.CLASSIFY;
+		}
+		TIER_TURNS[h.tier.ordinal()].increment();
+		PREPROCESS_LATENCY.recordSince(start);
+		if(h.tier == AnalysisTier.CHEAP){
+			h.daTag = route.tag;
+			TOTAL_LATENCY.recordSince(begin);
+			return h;
 		}
+		AnnotationProfile needed = h.tier == AnalysisTier.CLASSIFY ? AnnotationProfile.CLASSIFY_ONLY : profile;
 
 		
+		/*
+		 * Steps five to eight run as a graph of stages, see StageGraph. A stage starts once
+		 * the fields of the utterance it needs are filled in, so SPF parsing (which only needs
+		 * the canonical form) overlaps the NLP pipeline and everything after it. CFG semantics
+		 * rewrites the parse tree in place, so it waits until anaphora resolution has read it.
+		 * A text that may hold several sentences is parsed by SPF one sentence at a time, so
+		 * its SPF stage waits for the NLP pipeline to split it into sentences.
+		 */
+		AnalysisCache.Entry[] entry = { cache.get(h) };
+		if(entry[0] != null && !entry[0].covers(needed)){
+			entry[0] = null;
+		}
+		boolean[] shortCircuit = { false };
+		boolean[] parsed = { false };
+		boolean severalSentences = SENTENCE_BREAK.matcher(stripped).find();
+		StageGraph stages = new StageGraph(EnumSet.of(UtteranceField.TEXT, UtteranceField.CANONICAL));
+
 		/*--------------------------------------------------------
-		 * STEP SIX: Run the NLP pipeline 
+		 * STEP FIVE: Run the NLP pipeline (unless the utterance
+		 * has been seen recently)
 		 *-------------------------------------------------------*/
-		nlpAnalyzer.analyze(input, h);
-	
-		
+		stages.add("nlp", EnumSet.of(UtteranceField.TEXT),
+				EnumSet.of(UtteranceField.TOKENS, UtteranceField.PARSE), () -> {
+			if(entry[0] != null){
+				entry[0].restoreSyntax(h);
+				return;
+			}
+			long t = System.nanoTime();
+			nlpAnalyzer.analyze(input, h, needed);
+			NLP_LATENCY.recordSince(t);
+			storeSentences(h, dictionaries);
+			entry[0] = AnalysisCache.Entry.of(h, needed);
+			cache.put(entry[0]);
+		});
+
+
 		/*--------------------------------------------------------
-		 * STEP SEVEN: Run the dialogue tag classifier 
+		 * STEP SIX: Run the dialogue tag classifier 
 		 *-------------------------------------------------------*/
-		start = System.currentTimeMillis();
-		h.daTag = dialogueClassifier.classify(h, conversation);
-		if(canShortCircuit(h)){
+		stages.add("classifier", EnumSet.of(UtteranceField.TEXT, UtteranceField.TOKENS, UtteranceField.PARSE),
+				EnumSet.of(UtteranceField.DA_TAG), () -> {
+			long t = System.nanoTime();
+			h.daTag = dialogueClassifier.classify(h, conversation);
+			if(!h.sentences.isEmpty()){
+				List<DialogueActTag> tags = dialogueClassifier.classify(h.sentences, conversation);
+				for(int i = 0; i < tags.size(); i++){
+					h.sentences.get(i).daTag = tags.get(i);
+				}
+			}
+			CLASSIFIER_LATENCY.recordSince(t);
+			shortCircuit[0] = canShortCircuit(h);
+		});
+
+		if(h.tier == AnalysisTier.CLASSIFY){
+			stages.run(stageExecutor);
+			h.skippedStages.addAll(EnumSet.of(AnalysisStage.ANAPHORA, AnalysisStage.CFG_SEMANTICS, AnalysisStage.SPF_SEMANTICS));
+			TOTAL_LATENCY.recordSince(begin);
 			return h;
 		}
-		stop = System.currentTimeMillis();
-		if(Logger.debug()) {
-			System.out.println("\tDialogue Classifier: " + (stop-start) + " milliseconds");
-		}
 
-		
+
 		/*--------------------------------------------------------
-		 * STEP EIGHT: Perform anaphora resolution 
+		 * STEP SEVEN: Perform anaphora resolution 
 		 *-------------------------------------------------------*/
-		start = System.currentTimeMillis();
-		anaphoraAnalyzer.analyze(h, conversation);
-		stop = System.currentTimeMillis();
-		if(Logger.debug()) {
-			System.out.println("\tAnaphora Analyzer: " + (stop-start) + " milliseconds");
-		}
+		stages.add("anaphora", EnumSet.of(UtteranceField.TOKENS, UtteranceField.PARSE, UtteranceField.DA_TAG),
+				EnumSet.of(UtteranceField.RESOLUTIONS), () -> {
+			if(shortCircuit[0]){
+				return;
+			}
+			if(deadline.hasExpired()){
+				skip(h, AnalysisStage.ANAPHORA);
+				return;
+			}
+			long t = System.nanoTime();
+			if(h.sentences.isEmpty()){
+				anaphoraAnalyzer.analyze(h, conversation);
+			}
+			else {
+				// The analyzer keeps the tree it is working on, so each sentence gets its own
+				StageGraph.forEach(h.sentences, sentence -> new AnaphoraAnalyzer().analyze(sentence, conversation),
+						stageExecutor);
+				for(Utterance sentence : h.sentences){
+					for(Map.Entry<String, String> resolution : sentence.resolutions.entrySet()){
+						h.resolutions.putIfAbsent(resolution.getKey(), resolution.getValue());
+					}
+				}
+			}
+			ANAPHORA_LATENCY.recordSince(t);
+		});
+
 
 		/*---------------------------------------------------------------
-		 * STEP NINE: Perform semantic analysis. Convert to logical form 
+		 * STEP EIGHT: Perform semantic analysis. Convert to logical form 
 		 *--------------------------------------------------------------*/
-		start = System.currentTimeMillis();
-		try {
-			folSemAnalyzer.analyze(h, conversation);
-			spfSemAnalyzer.analyze(h, conversation);
-		} catch (java.lang.IndexOutOfBoundsException e) {
-			System.out.println("Error with semantic analysis");
-			System.out.println(e);
+		stages.add("cfg semantics", EnumSet.of(UtteranceField.TEXT, UtteranceField.PARSE, UtteranceField.DA_TAG,
+				UtteranceField.RESOLUTIONS), EnumSet.of(UtteranceField.FIRST_ORDER), () -> {
+			if(shortCircuit[0]){
+				return;
+			}
+			if(deadline.hasExpired()){
+				skip(h, AnalysisStage.CFG_SEMANTICS);
+				return;
+			}
+			long t = System.nanoTime();
+			if(h.sentences.isEmpty()){
+				analyzeCFG(h, conversation);
+			}
+			else {
+				// The sentences write to the knowledge base, so they are interpreted in order
+				List<MyPredicate> rep = new ArrayList<MyPredicate>();
+				for(Utterance sentence : h.sentences){
+					analyzeCFG(sentence, conversation);
+					if(sentence.firstOrderRep != null){
+						rep.addAll(sentence.firstOrderRep);
+					}
+				}
+				h.firstOrderRep = rep.isEmpty() ? null : rep;
+			}
+			CFG_LATENCY.recordSince(t);
+		});
+		stages.add("spf semantics", severalSentences ? EnumSet.of(UtteranceField.CANONICAL, UtteranceField.TOKENS)
+				: EnumSet.of(UtteranceField.CANONICAL), EnumSet.of(UtteranceField.SPF_PARSE), () -> {
+			if(entry[0] != null && entry[0].hasSemantics()){
+				entry[0].restoreSemantics(h);
+				return;
+			}
+			if(!severalSentences || h.sentences.isEmpty()){
+				try {
+					parsed[0] = analyzeSPF(h, conversation, deadline);
+				} catch (java.lang.IndexOutOfBoundsException e) {
+					semanticFailure(e);
+				}
+				return;
+			}
+			AtomicInteger incomplete = new AtomicInteger();
+			StageGraph.forEach(h.sentences, sentence -> {
+				try {
+					if(!analyzeSPF(sentence, conversation, deadline)){
+						incomplete.incrementAndGet();
+					}
+				} catch (java.lang.IndexOutOfBoundsException e) {
+					incomplete.incrementAndGet();
+					semanticFailure(e);
+				}
+			}, stageExecutor);
+			h.SPFparse = h.sentences.get(0).SPFparse;
+			h.SpfWordBreaks = h.sentences.get(0).SpfWordBreaks;
+			parsed[0] = incomplete.get() == 0;
+			for(Utterance sentence : h.sentences){
+				if(sentence.skippedStages.contains(AnalysisStage.SPF_SEMANTICS)){
+					synchronized(h){
+						h.skippedStages.add(AnalysisStage.SPF_SEMANTICS);
+					}
+				}
+			}
+		});
+
+		stages.run(stageExecutor);
+
+		if(shortCircuit[0]){
+			// The semantic parse started before the classifier decided it was not needed
+			SHORT_CIRCUITS.increment();
+			h.SPFparse = null;
+			h.SpfWordBreaks = null;
+			for(Utterance sentence : h.sentences){
+				sentence.SPFparse = null;
+				sentence.SpfWordBreaks = null;
+			}
 		}
-		stop = System.currentTimeMillis();
-		if(Logger.debug()) {
-			System.out.println("\tSemantic analyzer: " + (stop-start) + " milliseconds");
+		else if(parsed[0]){
+			cache.put(entry[0].withSemantics(h));
 		}
+		TOTAL_LATENCY.recordSince(begin);
 
 		if(Logger.debug()) {
 			System.out.println("\nThe final utterance is: ");
 			System.out.println(h);
 		}
+		return h;
+	}
+
+	/**
+	 * Computes the features of many pieces of text at once, for offline jobs such as
+	 * re-tagging logs, filling the analysis cache or evaluating classifiers.
+	 *
+	 * The texts are processed in chunks of BATCH_SIZE. The NLP pipeline annotates each chunk on
+	 * several threads and the dialogue act classifier tags it in a single batch. Each text
+	 * is treated as if it were the next utterance of the given conversation, which is not
+	 * modified. Anaphora resolution and semantic analysis depend on the conversation (and may
+	 * write to the knowledge base), so they are not run and are listed in
+	 * Utterance.skippedStages; SPF parses already in the analysis cache are filled in.
+	 *
+	 * @param inputs the pieces of text
+	 * @param conversation the conversation the texts would follow
+	 * @param consumer receives each utterance once its chunk has been analyzed, in the same
+	 * 		   order as the inputs
+	 */
+	public void analyzeBatch(List<String> inputs, Conversation conversation, Consumer<Utterance> consumer) throws IllegalArgumentException {
+		analyzeBatch(inputs, conversation, AnnotationProfile.semantics(), consumer);
+	}
+
+	/**
+	 * Computes the features a profile needs of many pieces of text at once, see
+	 * analyzeBatch(). CLASSIFY_ONLY is enough to re-tag logs or evaluate classifiers.
+	 *
+	 * @param inputs the pieces of text
+	 * @param conversation the conversation the texts would follow
+	 * @param profile the features the NLP pipeline computes
+	 * @param consumer receives each utterance once its chunk has been analyzed, in the same
+	 * 		   order as the inputs
+	 */
+	public void analyzeBatch(List<String> inputs, Conversation conversation, AnnotationProfile profile,
+			Consumer<Utterance> consumer) throws IllegalArgumentException {
+		if(inputs == null || conversation == null || profile == null || consumer == null){
+			throw new IllegalArgumentException();
+		}
+		PhraseDictionaries dictionaries = phrases.get();
+		for(int from = 0; from < inputs.size(); from += BATCH_SIZE){
+			long start = System.nanoTime();
+			List<String> chunk = inputs.subList(from, Math.min(from + BATCH_SIZE, inputs.size()));
+			List<Utterance> utterances = new ArrayList<Utterance>(chunk.size());
+			List<Utterance> unparsed = new ArrayList<Utterance>();
+			List<String> unparsedText = new ArrayList<String>();
+			List<Utterance> untagged = new ArrayList<Utterance>();
+
+			for(String input : chunk){
+				String stripped = input.replaceAll("\\p{Punct}*$", "");
+				Utterance h = new Utterance(input);
+				storePunctuation(h, input);
+				h.canonicalUtterance = dictionaries.canonicalize(stripped);
+				utterances.add(h);
+				DialogueActTag greeting = dictionaries.matchGreeting(stripped);
+				if(greeting != null){
+					h.daTag = greeting;
+					GREETINGS.increment();
+					continue;
+				}
+
+				h.skippedStages.addAll(EnumSet.of(AnalysisStage.ANAPHORA, AnalysisStage.CFG_SEMANTICS, AnalysisStage.SPF_SEMANTICS));
+				AnalysisCache.Entry cached = cache.get(h);
+				if(cached == null || !cached.covers(profile)){
+					unparsed.add(h);
+					unparsedText.add(input);
+				}
+				else {
+					cached.restoreSyntax(h);
+					if(cached.hasSemantics()){
+						cached.restoreSemantics(h);
+						h.skippedStages.remove(AnalysisStage.SPF_SEMANTICS);
+					}
+				}
+				untagged.add(h);
+			}
+
+			if(!unparsed.isEmpty()){
+				nlpAnalyzer.analyze(unparsedText, unparsed, profile);
+				for(Utterance h : unparsed){
+					storeSentences(h, dictionaries);
+					cache.put(AnalysisCache.Entry.of(h, profile));
+				}
+			}
+			if(!untagged.isEmpty()){
+				// The sentences of multi-sentence texts are tagged along with the texts
+				List<Utterance> tagged = new ArrayList<Utterance>(untagged);
+				for(Utterance h : untagged){
+					tagged.addAll(h.sentences);
+				}
+				List<DialogueActTag> tags = dialogueClassifier.classify(tagged, conversation);
+				for(int i = 0; i < tagged.size(); i++){
+					tagged.get(i).daTag = tags.get(i);
+				}
+			}
+			BATCH_LATENCY.recordSince(start);
+			BATCH_UTTERANCES.add(chunk.size());
+
+			for(Utterance h : utterances){
+				consumer.accept(h);
+			}
+		}
+	}
+
+	/**
+	 * Returns the canonical form of a piece of text: the text without its ending punctuation,
+	 * with slang replaced by standardized forms, lowercased and with contractions expanded.
+	 * This is the normalization analyze() performs before looking up greetings and closings.
+	 *
+	 * @param input a piece of text
+	 * @return the canonical form of the text
+	 */
+	public String normalize(String input){
+		return phrases.get().canonicalize(input.replaceAll("\\p{Punct}*$", ""));
+	}
+
+	/**
+	 * Computes the features of an utterance the agent itself produced. The action that produced
+	 * the utterance is known, so its dialogue act is taken from the action instead of running
+	 * the classifier (which might disagree with it).
+	 * 
+	 * Later turns only read the text and the dialogue act of the agent's utterances, so the
+	 * NLP pipeline, anaphora resolution and semantic analysis are skipped. If the action
+	 * does not correspond to a single dialogue act, the utterance is tokenized and classified
+	 * (see AnnotationProfile.CLASSIFY_ONLY).
+	 *
+	 * @param input the text produced by the agent
+	 * @param action the action that produced the text
+	 * @param conversation the conversation so far
+	 * @return an Utterance object with the text, punctuation, canonical form and
+	 * 		   dialogue act of the input
+	 */
+	public Utterance analyze(String input, Action action, Conversation conversation) throws IllegalArgumentException {
+		if(input == null || action == null || conversation == null){
+			throw new IllegalArgumentException();
+		}
+		DialogueActTag tag = action.toDialogueActTag();
+		if(tag == null){
+			return analyze(input, conversation, Deadline.NONE, AnnotationProfile.CLASSIFY_ONLY);
+		}
 
-		System.out.println("Final utterance: " + h);
+		Utterance h = new Utterance(input);
+		storePunctuation(h, input);
+		h.canonicalUtterance = phrases.get().canonicalize(input.replaceAll("\\p{Punct}*$", ""));
+		h.daTag = tag;
 		return h;
 	}
 
+	/**
+	 * Computes the features of a piece of text that do not depend on the conversation and
+	 * stores them in the analysis cache, so that a later analyze() of the same text only runs
+	 * the stages that do. Used by IncrementalAnalysis while the text is being typed.
+	 *
+	 * @param input a piece of text
+	 * @param superseded returns true once the text is no longer worth analyzing, in which case
+	 * 		   the SPF parse is skipped
+	 */
+	void speculate(String input, BooleanSupplier superseded){
+		PhraseDictionaries dictionaries = phrases.get();
+		String stripped = input.replaceAll("\\p{Punct}*$", "");
+		if(dictionaries.matchGreeting(stripped) != null){
+			// analyze() answers greetings and closings without the pipeline
+			return;
+		}
+		Utterance h = new Utterance(input);
+		h.canonicalUtterance = dictionaries.canonicalize(stripped);
+		AnalysisTier tier = router.route(h, new Conversation()).tier;
+		if(tier == AnalysisTier.CHEAP){
+			return;
+		}
+		AnnotationProfile profile = tier == AnalysisTier.CLASSIFY ? AnnotationProfile.CLASSIFY_ONLY : AnnotationProfile.semantics();
+		AnalysisCache.Entry entry = cache.get(h);
+		if(entry == null || !entry.covers(profile)){
+			long t = System.nanoTime();
+			nlpAnalyzer.analyze(input, h, profile);
+			NLP_LATENCY.recordSince(t);
+			storeSentences(h, dictionaries);
+			entry = AnalysisCache.Entry.of(h, profile);
+			cache.put(entry);
+		}
+		// The sentences of a longer text are parsed by SPF once it is entered
+		if(tier == AnalysisTier.CLASSIFY || entry.numSentences() > 0 || entry.hasSemantics() || !spfSemAnalyzer.isDone() || spfSemAnalyzer.isCompletedExceptionally()
+				|| superseded.getAsBoolean()){
+			return;
+		}
+		Utterance scratch = new Utterance(input);
+		scratch.canonicalUtterance = h.canonicalUtterance;
+		if(analyzeSPF(scratch, new Conversation(), Deadline.NONE)){
+			cache.put(entry.withSemantics(scratch));
+		}
+	}
+
 	/*------------------------------------------------------------------
 	 * 						Private Auxiliary Methods
 	 *------------------------------------------------------------------*/
 
+	/**
+	 * Runs the SPF parser on an utterance. Without a deadline the parser runs on the calling
+	 * thread. The parser is skipped while it is still loading. With a deadline it runs on the
+	 * semantic executor on a scratch copy of the utterance, so a parse abandoned at the
+	 * deadline cannot write to the utterance later.
+	 *
+	 * An abandoned parse is not cancelled, since the SPF parser does not check for
+	 * interruption; it keeps its thread until it finishes and its result is dropped. While
+	 * every thread is taken, a new parse would only queue behind them and miss its deadline,
+	 * so it is skipped instead.
+	 * @return True if the parser ran to completion
+	 */
+	private boolean analyzeSPF(Utterance h, Conversation conversation, Deadline deadline){
+		if(!spfSemAnalyzer.isDone() || spfSemAnalyzer.isCompletedExceptionally()){
+			// Still loading (or failed to load)
+			skip(h, AnalysisStage.SPF_SEMANTICS);
+			return false;
+		}
+		SemanticAnalyzer spf = spfSemAnalyzer.join();
+		if(!deadline.isBounded()){
+			long start = System.nanoTime();
+			spf.analyze(h, conversation);
+			SPF_LATENCY.recordSince(start);
+			return true;
+		}
+		if(deadline.hasExpired()){
+			skip(h, AnalysisStage.SPF_SEMANTICS);
+			return false;
+		}
+
+		if(spfParses.incrementAndGet() > SPF_THREADS){
+			spfParses.decrementAndGet();
+			skip(h, AnalysisStage.SPF_SEMANTICS);
+			return false;
+		}
+
+		Utterance scratch = new Utterance(h.utterance);
+		scratch.canonicalUtterance = h.canonicalUtterance;
+		Future<?> parse = semanticExecutor.submit(() -> {
+			try {
+				long start = System.nanoTime();
+				spf.analyze(scratch, conversation);
+				SPF_LATENCY.recordSince(start);
+			}
+			finally {
+				spfParses.decrementAndGet();
+			}
+		});
+		try {
+			parse.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+			h.SPFparse = scratch.SPFparse;
+			h.SpfWordBreaks = scratch.SpfWordBreaks;
+			return true;
+		} catch (TimeoutException e) {
+			skip(h, AnalysisStage.SPF_SEMANTICS);
+		} catch (InterruptedException e) {
+			skip(h, AnalysisStage.SPF_SEMANTICS);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			SEMANTIC_FAILURES.increment();
+			System.out.println("Error with semantic analysis");
+			System.out.println(e.getCause());
+		}
+		return false;
+	}
+
+	/**
+	 * Runs the CFG semantic analyzer on an utterance (or one of its sentences)
+	 */
+	private void analyzeCFG(Utterance h, Conversation conversation){
+		try {
+			folSemAnalyzer.analyze(h, conversation);
+		} catch (java.lang.IndexOutOfBoundsException e) {
+			semanticFailure(e);
+		}
+	}
+
+	/**
+	 * Fills in the punctuation and canonical form of each sentence of an utterance with more
+	 * than one sentence
+	 */
+	private void storeSentences(Utterance h, PhraseDictionaries dictionaries){
+		for(Utterance sentence : h.sentences){
+			storePunctuation(sentence, sentence.utterance);
+			sentence.canonicalUtterance = dictionaries.canonicalize(sentence.utterance.replaceAll("\\p{Punct}*$", ""));
+		}
+	}
+
+	/**
+	 * Records that semantic analysis failed
+	 */
+	private static void semanticFailure(RuntimeException e){
+		SEMANTIC_FAILURES.increment();
+		System.out.println("Error with semantic analysis");
+		System.out.println(e);
+	}
+
+	/**
+	 * Records that a stage was skipped
+	 */
+	private static void skip(Utterance h, AnalysisStage stage){
+		// Stages running at the same time may skip at the same time
+		synchronized(h){
+			h.skippedStages.add(stage);
+		}
+		SKIPPED.get(stage).increment();
+	}
+
 	/**
 	 * Determine if dialogue act tag is simple enough that further processing (e.g. semantic
 	 * and anaphoric) is not necessary
@@ -281,93 +977,6 @@ public class TextAnalyzer {
 	}
 
 	
-	/**
-	 * A nested class that reads in from file and populates the respective hashes
-	 * @author alchambers
-	 *
-	 */
-	class HashReader{
-		/**
-		 * Populates the hash of standardized forms
-		 */
-		public void populateStandardForms(){
-			try{
-				BufferedReader input = new BufferedReader(new FileReader(PathFormat.absolutePathFromRoot("models/phrases/slang.txt")));
-				String line = input.readLine();
-				while(line != null){
-					int sep = line.indexOf("\t");
-					if(sep != -1){
-						standardizedForms.put(line.substring(0, sep), line.substring(sep+1));
-					}
-					line = input.readLine();
-				}
-				input.close();
-			}
-			catch(IOException e){
-				System.out.println(e);
-			}
-		}
-		/**
-		 * Populates the greeting and closing hash
-		 */
-		public void populateGreeting(){
-			try{
-				readTextFile(new BufferedReader(new FileReader(PathFormat.absolutePathFromRoot("models/phrases/closing.txt"))), DialogueActTag.CONVENTIONAL_CLOSING);
-				readTextFile(new BufferedReader(new FileReader(PathFormat.absolutePathFromRoot("models/phrases/greeting.txt"))), DialogueActTag.CONVENTIONAL_OPENING);
-			}
-			catch(IOException e){
-				System.out.println(e);
-			}
-		}
-		
-		
-
-		/**
-		 * Populates the hash of contraction expansions.
-		 */
-		public void populateContractions(){
-			try{
-				BufferedReader input = new BufferedReader(new FileReader(PathFormat.absolutePathFromRoot("models/phrases/contractions.txt")));
-				String line = input.readLine();
-				while(line != null){
-					int sep = line.indexOf("\t");
-					if(sep != -1){
-						contractionExpansion.put(line.substring(0, sep), line.substring(sep+1));
-					}
-					line = input.readLine();
-				}
-				input.close();
-			}
-			catch(IOException e){
-				System.out.println(e);
-			}
-		}
-		
-
-		/**
-		 * Reads lines from a text file and adds them to the greetClose hash with the
-		 * corresponding dialogue act tag
-		 * @param input A text file
-		 * @param tag Corresponding dialogue act tag
-		 */
-		private void readTextFile(BufferedReader input, DialogueActTag tag){
-			try{
-				String line = input.readLine();
-				while(line != null){
-					greetClose.put(line, tag);
-					line = input.readLine();
-				}
-				input.close();
-			}
-			catch(IOException e){
-				System.out.println(e);
-			}
-
-		}
-	}
-
-
-
 	/**
 	 * Run this method to inspect the features computed for a given typed
 	 * piece of text.
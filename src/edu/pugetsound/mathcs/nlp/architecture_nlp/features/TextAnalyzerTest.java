@@ -1,13 +1,20 @@
 package edu.pugetsound.mathcs.nlp.architecture_nlp.features;
 
 import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.junit.Before;
 import org.junit.Test;
 
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.Action;
 import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.DialogueActTag;
 import edu.pugetsound.mathcs.nlp.controller.Controller;
 import edu.pugetsound.mathcs.nlp.lang.Conversation;
+import edu.pugetsound.mathcs.nlp.lang.DependencyGraph;
 import edu.pugetsound.mathcs.nlp.lang.Punctuation;
+import edu.pugetsound.mathcs.nlp.lang.Token;
 import edu.pugetsound.mathcs.nlp.lang.Utterance;
 
 public class TextAnalyzerTest {
@@ -27,13 +34,14 @@ public class TextAnalyzerTest {
 
 	@Test
 	public void testPopulateHash(){
-		assertTrue("Hash of greetings/closings not populated", analyzer.greetClose.size() > 0);
-		assertTrue("Hash of standardized forms not populated", analyzer.standardizedForms.size() > 0);		
-		assertTrue("Hash of greetings/closings does not contain 'hello'", analyzer.greetClose.containsKey("hello"));
-		assertTrue("Hash of greetings/closings does not contain 'goodbye'", analyzer.greetClose.containsKey("goodbye"));	
-		assertEquals(DialogueActTag.CONVENTIONAL_OPENING, analyzer.greetClose.get("hello"));
-		assertEquals(DialogueActTag.CONVENTIONAL_CLOSING, analyzer.greetClose.get("goodbye"));		
-		assertEquals("What are you doing?", analyzer.standardizedForms.get("what's up"));
+		PhraseDictionaries phrases = analyzer.phrases.get();
+		assertTrue("Hash of greetings/closings not populated", phrases.greetClose.size() > 0);
+		assertTrue("Hash of standardized forms not populated", phrases.standardizedForms.size() > 0);		
+		assertTrue("Hash of greetings/closings does not contain 'hello'", phrases.greetClose.containsKey("hello"));
+		assertTrue("Hash of greetings/closings does not contain 'goodbye'", phrases.greetClose.containsKey("goodbye"));	
+		assertEquals(DialogueActTag.CONVENTIONAL_OPENING, phrases.greetClose.get("hello"));
+		assertEquals(DialogueActTag.CONVENTIONAL_CLOSING, phrases.greetClose.get("goodbye"));		
+		assertEquals("What are you doing?", phrases.standardizedForms.get("what's up"));
 	}
 	
 	
@@ -108,6 +116,57 @@ public class TextAnalyzerTest {
 		assertEquals("doing", utt.rootDependency);		
 	}
 	
+	@Test
+	public void testAgentUtterance(){
+		// The dialogue act comes from the action, so the NLP pipeline does not run
+		Utterance utt = analyzer.analyze(statement, Action.STATEMENT, conversation);
+		assertEquals(statement, utt.utterance);
+		assertEquals(DialogueActTag.STATEMENT, utt.daTag);
+		assertEquals(Punctuation.PERIOD, utt.punct);
+		assertEquals(0, utt.tokens.size());
+		assertNull(utt.constituencyParse);
+		assertNull(utt.dependencyParse);
+		assertNull(utt.firstOrderRep);
+		assertEquals(0, utt.resolutions.size());
+	}
+
+	@Test
+	public void testDependencyParseNotRendered(){
+		// The string rendering of a dependency parse is only built when something asks for it
+		AtomicBoolean rendered = new AtomicBoolean();
+		analyzer.nlpAnalyzer = new NLPSuite() {
+			@Override
+			public void analyze(String sentence, Utterance utterance, AnnotationProfile profile) {
+				for(String word : sentence.replaceAll("\\p{Punct}", "").split(" ")) {
+					utterance.tokens.add(new Token(word));
+				}
+				int nsubj = DependencyGraph.relationId("nsubj");
+				int det = DependencyGraph.relationId("det");
+				utterance.dependencyParse = new DependencyGraph(
+						new String[]{"The", "cat", "ate", "the", "fish"},
+						new String[]{"DT", "NN", "VBD", "DT", "NN"},
+						new int[]{2, 3, DependencyGraph.ROOT, 5, 3},
+						new int[]{det, nsubj, DependencyGraph.relationId("root"), det, DependencyGraph.relationId("dobj")}) {
+					@Override
+					public String toString() {
+						rendered.set(true);
+						return super.toString();
+					}
+				};
+			}
+
+			@Override
+			public void analyze(List<String> sentences, List<Utterance> utterances, AnnotationProfile profile) {
+				for(int i = 0; i < sentences.size(); i++) {
+					analyze(sentences.get(i), utterances.get(i), profile);
+				}
+			}
+		};
+		Utterance utt = analyzer.analyze(statement, conversation);
+		assertNotNull(utt.dependencyParse);
+		assertFalse(rendered.get());
+	}
+
 	@Test(expected=IllegalArgumentException.class)
 	public void testUtteranceNull(){
 		analyzer.analyze(null, conversation);		
@@ -0,0 +1,162 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.features;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.DialogueActTag;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.datag.classify.DumbClassifier;
+import edu.pugetsound.mathcs.nlp.lang.AnalysisTier;
+import edu.pugetsound.mathcs.nlp.lang.Conversation;
+import edu.pugetsound.mathcs.nlp.lang.Utterance;
+import edu.pugetsound.mathcs.nlp.util.PathFormat;
+
+/**
+ * Decides how much of the analysis a turn needs before the NLP pipeline runs, see
+ * AnalysisTier. The rules are checked in order:
+ *
+ * 1. A turn without any words (e.g. "..." or ":)") has nothing to analyze. It is CHEAP and
+ *    its dialogue act is NULL.
+ * 2. A turn the DumbClassifier recognizes as a question is analyzed in full, since the
+ *    agent needs its meaning to answer it.
+ * 3. A turn that consists of a phrase in the rules file goes to the tier of the phrase. A
+ *    CHEAP phrase also gives the dialogue act of the turn.
+ * 4. A turn of at most maxClassifyWords words is only classified.
+ * 5. Any other turn is analyzed in full.
+ *
+ * Phrases are compared after the normalization of GreetingMatcher, so "Uh huh." and
+ * "uh huhhh" both match the phrase "uh huh". The router is immutable once constructed and
+ * can be shared by any number of threads.
+ */
+public class TurnRouter {
+
+	/**
+	 * The rules file, relative to the project root
+	 */
+	public static final String FILE = "models/routing/rules.txt";
+
+	/**
+	 * The key of the line of the rules file that sets maxClassifyWords
+	 */
+	public static final String MAX_WORDS_KEY = "max_classify_words";
+
+	/**
+	 * The number of words up to which a turn without a rule is only classified, unless the
+	 * rules file says otherwise
+	 */
+	public static final int DEFAULT_MAX_CLASSIFY_WORDS = 1;
+
+	/**
+	 * The tier of a turn and, for the CHEAP tier, its dialogue act
+	 */
+	public static class Route {
+		public static final Route EMPTY = new Route(AnalysisTier.CHEAP, DialogueActTag.NULL);
+		public static final Route CLASSIFY = new Route(AnalysisTier.CLASSIFY, null);
+		public static final Route FULL = new Route(AnalysisTier.FULL, null);
+
+		public final AnalysisTier tier;
+
+		/**
+		 * The dialogue act of the turn, or null unless the tier is CHEAP
+		 */
+		public final DialogueActTag tag;
+
+		public Route(AnalysisTier tier, DialogueActTag tag) {
+			if(tier == null || (tier == AnalysisTier.CHEAP) != (tag != null)) {
+				throw new IllegalArgumentException("A route has a dialogue act if and only if it is CHEAP");
+			}
+			this.tier = tier;
+			this.tag = tag;
+		}
+	}
+
+	private final HashMap<String, Route> rules = new HashMap<String, Route>();
+	private final int maxClassifyWords;
+	private final DumbClassifier questions = new DumbClassifier();
+
+	/**
+	 * Constructs a router
+	 * @param rules A map from each phrase to the route of turns that consist of it
+	 * @param maxClassifyWords The number of words up to which a turn without a rule is only
+	 * 			classified
+	 */
+	public TurnRouter(Map<String, Route> rules, int maxClassifyWords) {
+		for(Map.Entry<String, Route> rule : rules.entrySet()) {
+			this.rules.put(GreetingMatcher.normalize(rule.getKey()), rule.getValue());
+		}
+		this.maxClassifyWords = maxClassifyWords;
+	}
+
+	/**
+	 * Reads the rules file. Lines that are not valid rules are reported and skipped.
+	 * @return The router
+	 * @throws IOException if the rules file cannot be read
+	 */
+	public static TurnRouter load() throws IOException {
+		Map<String, Route> rules = new HashMap<String, Route>();
+		int maxClassifyWords = DEFAULT_MAX_CLASSIFY_WORDS;
+		try(BufferedReader input = new BufferedReader(new FileReader(PathFormat.absolutePathFromRoot(FILE)))) {
+			String line;
+			int number = 0;
+			while((line = input.readLine()) != null) {
+				number++;
+				if(line.trim().isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] fields = line.split("\t");
+				try {
+					if(fields[0].equals(MAX_WORDS_KEY)) {
+						maxClassifyWords = Integer.parseInt(fields[1].trim());
+					}
+					else {
+						AnalysisTier tier = AnalysisTier.valueOf(fields[1].trim());
+						DialogueActTag tag = fields.length > 2 ? DialogueActTag.valueOf(fields[2].trim()) : null;
+						rules.put(fields[0], new Route(tier, tag));
+					}
+				}
+				catch(IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+					System.out.println("Skipping line " + number + " of " + FILE + ": " + line);
+				}
+			}
+		}
+		return new TurnRouter(rules, maxClassifyWords);
+	}
+
+	/**
+	 * Returns a router without any phrases, used when the rules file cannot be read
+	 */
+	public static TurnRouter empty() {
+		return new TurnRouter(new HashMap<String, Route>(), DEFAULT_MAX_CLASSIFY_WORDS);
+	}
+
+	/**
+	 * Decides how much of the analysis a turn needs
+	 * @param h The utterance of the turn. Only its text is read.
+	 * @param conversation The conversation the turn belongs to
+	 * @return The route of the turn
+	 */
+	public Route route(Utterance h, Conversation conversation) {
+		String text = GreetingMatcher.normalize(h.utterance);
+		if(text.isEmpty()) {
+			return Route.EMPTY;
+		}
+		if(questions.classify(h, conversation) != null) {
+			return Route.FULL;
+		}
+		Route rule = rules.get(text);
+		if(rule != null) {
+			return rule;
+		}
+		int words = text.split(" ").length;
+		return words <= maxClassifyWords ? Route.CLASSIFY : Route.FULL;
+	}
+
+	/**
+	 * Returns the number of phrases with a rule
+	 */
+	public int size() {
+		return rules.size();
+	}
+}
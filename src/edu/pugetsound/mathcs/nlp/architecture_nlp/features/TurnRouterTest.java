@@ -0,0 +1,85 @@
+package edu.pugetsound.mathcs.nlp.architecture_nlp.features;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.DialogueActTag;
+import edu.pugetsound.mathcs.nlp.lang.AnalysisTier;
+import edu.pugetsound.mathcs.nlp.lang.Conversation;
+import edu.pugetsound.mathcs.nlp.lang.Utterance;
+
+public class TurnRouterTest {
+
+	private TurnRouter router;
+	private Conversation conversation;
+
+	@Before
+	public void setUp() {
+		Map<String, TurnRouter.Route> rules = new HashMap<String, TurnRouter.Route>();
+		rules.put("uh huh", new TurnRouter.Route(AnalysisTier.CHEAP, DialogueActTag.BACKCHANNEL));
+		rules.put("i don't know", TurnRouter.Route.CLASSIFY);
+		rules.put("go", TurnRouter.Route.FULL);
+		router = new TurnRouter(rules, 2);
+		conversation = new Conversation();
+	}
+
+	@Test
+	public void testRules() {
+		TurnRouter.Route route = route("Uh huh.");
+		assertEquals(AnalysisTier.CHEAP, route.tier);
+		assertEquals(DialogueActTag.BACKCHANNEL, route.tag);
+		assertEquals(AnalysisTier.CHEAP, route("uh huhhh").tier);
+		assertEquals(AnalysisTier.CLASSIFY, route("I don't know").tier);
+		assertEquals(AnalysisTier.FULL, route("go").tier);
+	}
+
+	@Test
+	public void testLength() {
+		assertEquals(AnalysisTier.CLASSIFY, route("Fluffy").tier);
+		assertEquals(AnalysisTier.CLASSIFY, route("sounds good").tier);
+		assertEquals(AnalysisTier.FULL, route("My cat is Fluffy.").tier);
+	}
+
+	@Test
+	public void testEmpty() {
+		for(String empty : new String[]{"", "...", ":)", "???"}) {
+			TurnRouter.Route route = route(empty);
+			assertEquals(empty, AnalysisTier.CHEAP, route.tier);
+			assertEquals(empty, DialogueActTag.NULL, route.tag);
+		}
+	}
+
+	@Test
+	public void testQuestions() {
+		assertEquals(AnalysisTier.FULL, route("uh huh?").tier);
+		assertEquals(AnalysisTier.FULL, route("Why?").tier);
+	}
+
+	@Test
+	public void testRulesFile() throws Exception {
+		TurnRouter fromFile = TurnRouter.load();
+		assertTrue(fromFile.size() > 0);
+		PhraseDictionaries phrases = PhraseDictionaries.load(1, new HashMap<String, DialogueActTag>());
+		for(String backchannel : new String[]{"uh huh", "Uh-huh.", "yeah", "Okay.", "mm hmm", "right", "Right."}) {
+			// TextAnalyzer looks for greetings and closings before routing
+			assertNull(backchannel, phrases.matchGreeting(backchannel));
+			TurnRouter.Route route = fromFile.route(new Utterance(backchannel), conversation);
+			assertEquals(backchannel, AnalysisTier.CHEAP, route.tier);
+			assertEquals(backchannel, DialogueActTag.BACKCHANNEL, route.tag);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCheapNeedsTag() {
+		new TurnRouter.Route(AnalysisTier.CHEAP, null);
+	}
+
+	private TurnRouter.Route route(String text) {
+		return router.route(new Utterance(text), conversation);
+	}
+}
@@ -1,89 +1,295 @@
 package edu.pugetsound.mathcs.nlp.architecture_nlp.features.stanford;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Properties;
 import java.util.Scanner;
-import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
+import edu.pugetsound.mathcs.nlp.architecture_nlp.features.AnnotationProfile;
 import edu.pugetsound.mathcs.nlp.architecture_nlp.features.MyTree;
 import edu.pugetsound.mathcs.nlp.architecture_nlp.features.NLPSuite;
+import edu.pugetsound.mathcs.nlp.lang.DependencyGraph;
 import edu.pugetsound.mathcs.nlp.lang.Symbol;
 import edu.pugetsound.mathcs.nlp.lang.Token;
 import edu.pugetsound.mathcs.nlp.lang.Utterance;
-import edu.pugetsound.mathcs.nlp.util.Logger;
+import edu.pugetsound.mathcs.nlp.util.LatencyHistogram;
+import edu.pugetsound.mathcs.nlp.util.Metrics;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.IndexedWord;
 import edu.stanford.nlp.ling.CoreAnnotations.NamedEntityTagAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.PartOfSpeechAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
 import edu.stanford.nlp.pipeline.Annotation;
 import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 import edu.stanford.nlp.semgraph.SemanticGraph;
+import edu.stanford.nlp.semgraph.SemanticGraphEdge;
 import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations.BasicDependenciesAnnotation;
-import edu.stanford.nlp.trees.GrammaticalRelation;
 import edu.stanford.nlp.trees.TreeCoreAnnotations.TreeAnnotation;
 import edu.stanford.nlp.util.CoreMap;
 
+/**
+ * Runs the Stanford CoreNLP pipeline. Each AnnotationProfile has its own pipeline with only
+ * the annotators the profile needs. The pipeline of the default profile is created by the
+ * constructor and the others the first time they are used; CoreNLP shares the loaded models
+ * between pipelines, so a later pipeline only costs the models no earlier one needed.
+ *
+ * FULL_SEMANTICS parses with the PCFG parser and reads the dependencies off its trees.
+ * FAST_SEMANTICS parses with the shift-reduce parser (SR_PARSER_MODEL, from the English
+ * models jar of CoreNLP) and gets the dependencies from the neural dependency parser, which
+ * uses the same relation names, so extractGrammaticalRelations() reads both alike.
+ *
+ * A suite can be shared by any number of threads. Every call keeps its state in local
+ * variables, and the annotators used here are thread-safe (each parse gets its own parser
+ * query), so one pipeline per profile serves every thread and the models are loaded once.
+ * At most POOL_SIZE documents are annotated at the same time; further callers wait for a
+ * permit, so concurrent sessions share the cores instead of oversubscribing them. Each
+ * document is annotated on one thread, and a batch takes one permit per thread it uses.
+ */
 public class StanfordSuite implements NLPSuite {
 	// Certain annotators require other annotators to be loaded first.
 	// So the order of the annotators in this list is actually important.	 
 	//	protected static final String ANNOTATORS = "tokenize, ssplit, pos, lemma, parse, natlog, ner, coref";
 	//	protected static final String ANNOTATORS = "tokenize, ssplit, pos, lemma, parse, ner";
-	//protected static final String ANNOTATORS = "tokenize, ssplit, pos, lemma, parse, ner";
-	protected static final String ANNOTATORS = "tokenize, ssplit, pos, lemma, parse, ner";
-	protected static StanfordCoreNLP pipeline;
-	protected long start = 0L, stop = 0L;
+	protected static final String CLASSIFY_ONLY_ANNOTATORS = "tokenize, ssplit";
+	protected static final String FAST_SEMANTICS_ANNOTATORS = "tokenize, ssplit, pos, parse, depparse";
+	protected static final String FULL_SEMANTICS_ANNOTATORS = "tokenize, ssplit, pos, parse";
+	// NER needs the lemmas
+	protected static final String NAMED_ENTITIES_ANNOTATORS = "tokenize, ssplit, pos, lemma, parse, ner";
 
+	/**
+	 * The constituency parser of FAST_SEMANTICS
+	 */
+	public static final String SR_PARSER_MODEL = "edu/stanford/nlp/models/srparser/englishSR.ser.gz";
+
+	/**
+	 * The pipeline of each profile, indexed by the ordinal of the profile, or null if it has
+	 * not been used yet
+	 */
+	private final AtomicReferenceArray<StanfordCoreNLP> pipelines =
+			new AtomicReferenceArray<StanfordCoreNLP>(AnnotationProfile.values().length);
+
+	/**
+	 * Held while the pipeline of a profile is created, so other profiles can still be used
+	 */
+	private final Object[] pipelineLocks = new Object[AnnotationProfile.values().length];
+
+	/**
+	 * The number of documents that may be annotated at the same time
+	 */
+	public static final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * One permit per document being annotated. Fair, so a batch waiting for several permits
+	 * is not starved by single documents.
+	 */
+	private final Semaphore permits = new Semaphore(POOL_SIZE, true);
+
+	// Latency of each step of analyze()
+	private static final LatencyHistogram ANNOTATE_LATENCY = Metrics.histogram("stanford.annotate");
+	private static final LatencyHistogram ANNOTATE_BATCH_LATENCY = Metrics.histogram("stanford.annotate_batch");
+	private static final LatencyHistogram TOKENS_LATENCY = Metrics.histogram("stanford.tokens");
+	private static final LatencyHistogram PARSE_FEATURES_LATENCY = Metrics.histogram("stanford.parse_features");
+	private static final LongAdder EMPTY_DOCUMENTS = Metrics.counter("stanford.empty_documents");
+	private static final LongAdder MULTI_SENTENCE_DOCUMENTS = Metrics.counter("stanford.multi_sentence_documents");
+	private static final LatencyHistogram POOL_WAIT_LATENCY = Metrics.histogram("stanford.pool_wait");
 
+	// The relations of the dependency graphs that are built or read here
+	private static final int ROOT_RELATION = DependencyGraph.relationId("root");
+	private static final int NSUBJ = DependencyGraph.relationId("nsubj");
+	private static final int DOBJ = DependencyGraph.relationId("dobj");
+	private static final int NSUBJPASS = DependencyGraph.relationId("nsubjpass");
+
+
+	/**
+	 * Creates the suite and the pipeline of the profile of AnnotationProfile.semantics()
+	 */
 	public StanfordSuite() {
-		Properties props = new Properties();
-		props.put("annotators", ANNOTATORS);
-		props.put("ner.useSUTime", false);
-		props.put("ner.applyNumericClassifiers", false);
-		pipeline = new StanfordCoreNLP(props);
+		for(int i = 0; i < pipelineLocks.length; i++) {
+			pipelineLocks[i] = new Object();
+		}
+		pipeline(AnnotationProfile.semantics());
 	}
 
 	@Override
-	public void analyze(String input, Utterance utterance) {
+	public void analyze(String input, Utterance utterance, AnnotationProfile profile) {
 
 		// Annotate document with all tools registered with the pipeline
-		start = System.currentTimeMillis();
+		StanfordCoreNLP pipeline = pipeline(profile);
 		Annotation document = new Annotation(input);
-		pipeline.annotate(document);
-		stop = System.currentTimeMillis();
-		if(Logger.debug()) {
-			System.out.println("\tAnnotating document: " + (stop-start) + " milliseconds");
+		acquire(1);
+		try {
+			long start = System.nanoTime();
+			pipeline.annotate(document);
+			ANNOTATE_LATENCY.recordSince(start);
 		}
+		finally {
+			permits.release();
+		}
+		storeFeatures(document, utterance, profile);
+	}
+
+	/**
+	 * Annotates the sentences with up to one thread per core, using CoreNLP's own
+	 * multi-threaded annotation. The features of each sentence are stored as soon as it is
+	 * annotated.
+	 */
+	@Override
+	public void analyze(List<String> inputs, List<Utterance> utterances, AnnotationProfile profile) {
+		if(inputs.size() != utterances.size()){
+			throw new IllegalArgumentException("Expected one utterance per sentence");
+		}
+		List<Annotation> documents = new ArrayList<Annotation>(inputs.size());
+		IdentityHashMap<Annotation, Utterance> owners = new IdentityHashMap<Annotation, Utterance>();
+		for(int i = 0; i < inputs.size(); i++){
+			Annotation document = new Annotation(inputs.get(i));
+			documents.add(document);
+			owners.put(document, utterances.get(i));
+		}
+
+		StanfordCoreNLP pipeline = pipeline(profile);
+		int threads = Math.max(1, Math.min(POOL_SIZE, documents.size()));
+		acquire(threads);
+		try {
+			long start = System.nanoTime();
+			pipeline.annotate(documents, threads,
+					document -> storeFeatures(document, owners.get(document), profile));
+			ANNOTATE_BATCH_LATENCY.recordSince(start);
+		}
+		finally {
+			permits.release(threads);
+		}
+	}
+
+	/**
+	 * Returns the annotators a profile needs
+	 * @param profile The profile
+	 * @return The annotators, in the order they run
+	 */
+	public static String annotators(AnnotationProfile profile) {
+		switch(profile) {
+		case CLASSIFY_ONLY:
+			return CLASSIFY_ONLY_ANNOTATORS;
+		case FAST_SEMANTICS:
+			return FAST_SEMANTICS_ANNOTATORS;
+		case FULL_SEMANTICS:
+			return FULL_SEMANTICS_ANNOTATORS;
+		default:
+			return NAMED_ENTITIES_ANNOTATORS;
+		}
+	}
 
-		start = System.currentTimeMillis();		
+	/**
+	 * Returns the number of documents being annotated right now
+	 */
+	public int getActiveAnnotations() {
+		return POOL_SIZE - permits.availablePermits();
+	}
+
+	/**
+	 * Waits for permits to annotate documents
+	 */
+	private void acquire(int n) {
+		long start = System.nanoTime();
+		permits.acquireUninterruptibly(n);
+		POOL_WAIT_LATENCY.recordSince(start);
+	}
+
+	/**
+	 * Returns the pipeline of a profile, creating it the first time
+	 */
+	private StanfordCoreNLP pipeline(AnnotationProfile profile) {
+		StanfordCoreNLP pipeline = pipelines.get(profile.ordinal());
+		if(pipeline != null) {
+			return pipeline;
+		}
+		synchronized(pipelineLocks[profile.ordinal()]) {
+			pipeline = pipelines.get(profile.ordinal());
+			if(pipeline == null) {
+				long start = System.nanoTime();
+				Properties props = new Properties();
+				props.put("annotators", annotators(profile));
+				props.put("ner.useSUTime", false);
+				props.put("ner.applyNumericClassifiers", false);
+				// One permit stands for one core, so a document is parsed on one thread. The
+				// cores are shared between documents instead, see POOL_SIZE.
+				props.put("parse.nthreads", 1);
+				if(profile == AnnotationProfile.FAST_SEMANTICS) {
+					props.put("parse.model", SR_PARSER_MODEL);
+					// depparse computes the dependencies
+					props.put("parse.buildgraphs", false);
+				}
+				pipeline = new StanfordCoreNLP(props);
+				pipelines.set(profile.ordinal(), pipeline);
+				Metrics.histogram("stanford.pipeline_load." + profile.name().toLowerCase()).recordSince(start);
+			}
+		}
+		return pipeline;
+	}
+
+	/**
+	 * Stores the features of an annotated document. If the document has more than one
+	 * sentence, the features of each sentence are also stored in an utterance of its own in
+	 * Utterance.sentences.
+	 * @param document The annotated document
+	 * @param utterance The utterance to store the features in
+	 * @param profile The profile the document was annotated with
+	 */
+	private void storeFeatures(Annotation document, Utterance utterance, AnnotationProfile profile) {
 		List<CoreMap> sentences = document.get(SentencesAnnotation.class);
 		if(sentences.size() == 0){
+			EMPTY_DOCUMENTS.increment();
 			return;
 		}
-		CoreMap sentence = sentences.get(0);
-		stop = System.currentTimeMillis();
-		if(Logger.debug()) {
-			System.out.println("\tCore Map: " + (stop-start) + " milliseconds");
+		if(sentences.size() == 1){
+			storeFeatures(sentences.get(0), utterance, profile);
+			return;
 		}
 
+		MULTI_SENTENCE_DOCUMENTS.increment();
+		for(CoreMap sentence : sentences){
+			Utterance h = new Utterance(sentence.get(TextAnnotation.class));
+			storeFeatures(sentence, h, profile);
+			utterance.sentences.add(h);
+			utterance.tokens.addAll(h.tokens);
+			utterance.subjects.addAll(h.subjects);
+			utterance.directObjects.addAll(h.directObjects);
+		}
+		Utterance first = utterance.sentences.get(0);
+		utterance.constituencyParse = first.constituencyParse;
+		utterance.rootConstituency = first.rootConstituency;
+		utterance.dependencyParse = first.dependencyParse;
+		utterance.rootDependency = first.rootDependency;
+		utterance.isPassive = first.isPassive;
+	}
+
+	/**
+	 * Stores the features of a single sentence
+	 * @param sentence The annotated sentence
+	 * @param utterance The utterance to store the features in
+	 * @param profile The profile the sentence was annotated with
+	 */
+	private void storeFeatures(CoreMap sentence, Utterance utterance, AnnotationProfile profile) {
+		long start;
 
 		// Compute basic syntactic features
-		start = System.currentTimeMillis();		
+		start = System.nanoTime();
 		storeTokens(utterance, sentence);
-		stop = System.currentTimeMillis();
-		if(Logger.debug()) {
-			System.out.println("\tStore Tokens: " + (stop-start) + " milliseconds");
+		TOKENS_LATENCY.recordSince(start);
+		if(!profile.covers(AnnotationProfile.FAST_SEMANTICS)){
+			return;
 		}
 
 		// Compute parse tree features
-		start = System.currentTimeMillis();
+		start = System.nanoTime();
 		storeParseTrees(utterance, sentence);
-		stop = System.currentTimeMillis();
-		if(Logger.debug()) {
-			System.out.println("\tParse Tree features: " + (stop-start) + " milliseconds");
-		}
-
+		PARSE_FEATURES_LATENCY.recordSince(start);
 	}
 
 	/**
@@ -99,7 +305,8 @@ public class StanfordSuite implements NLPSuite {
 				t.beginPosition = token.beginPosition();
 				t.endPosition = token.endPosition();
 				t.pos = token.get(PartOfSpeechAnnotation.class);
-				t.entityTag = token.getString(NamedEntityTagAnnotation.class);
+				// Null unless the profile runs NER
+				t.entityTag = token.get(NamedEntityTagAnnotation.class);
 				h.tokens.add(t);
 			}
 		}
@@ -119,53 +326,74 @@ public class StanfordSuite implements NLPSuite {
 		 * The following URL lists the different types of dependency parsers available:
 		 * https://stanfordnlp.github.io/CoreNLP/depparse.html
 		 */
-		SemanticGraph tree = sentence.get(BasicDependenciesAnnotation.class);
-		h.dependencyParse = tree.toString();
-		h.rootDependency = tree.getFirstRoot().word();
-		extractGrammaticalRelations(tree, tree.getFirstRoot(), h);
+		DependencyGraph graph = toDependencyGraph(sentence.get(BasicDependenciesAnnotation.class));
+		h.dependencyParse = graph;
+		int root = graph.firstRoot();
+		h.rootDependency = root == DependencyGraph.NONE ? null : graph.word(root);
+		extractGrammaticalRelations(graph, h);
 
 	}
 
+	/**
+	 * Copies a dependency parse into the arrays of a DependencyGraph, visiting each word and
+	 * each edge once
+	 * @param tree A dependency parse
+	 * @return The graph
+	 */
+	private DependencyGraph toDependencyGraph(SemanticGraph tree){
+		List<IndexedWord> vertices = tree.vertexListSorted();
+		int size = vertices.isEmpty() ? 0 : vertices.get(vertices.size() - 1).index();
+		String[] words = new String[size];
+		String[] tags = new String[size];
+		int[] heads = new int[size];
+		int[] relations = new int[size];
+		Arrays.fill(heads, DependencyGraph.NONE);
+		Arrays.fill(relations, DependencyGraph.NONE);
+		for(IndexedWord w : vertices){
+			words[w.index() - 1] = w.word();
+			tags[w.index() - 1] = w.tag();
+		}
+		for(IndexedWord w : tree.getRoots()){
+			heads[w.index() - 1] = DependencyGraph.ROOT;
+			relations[w.index() - 1] = ROOT_RELATION;
+		}
+		for(SemanticGraphEdge edge : tree.edgeIterable()){
+			int dependent = edge.getDependent().index() - 1;
+			heads[dependent] = edge.getGovernor().index();
+			relations[dependent] = DependencyGraph.relationId(edge.getRelation().toString());
+		}
+		return new DependencyGraph(words, tags, heads, relations);
+	}
+
 
 	/**
-	 * A recursive method that traverses the dependency parse tree searching
-	 * for certain grammatical relations
-	 * @param tree A dependency parse tree
-	 * @param node A node in the parse tree
+	 * Finds the subjects and direct objects of a dependency parse, in the order of the
+	 * sentence, and whether it is passive. Relations are compared by their general relation,
+	 * so "nsubj:pass" counts as "nsubj".
+	 * @param graph A dependency parse
 	 * @param h The utterance itself
 	 */
-	private void extractGrammaticalRelations(SemanticGraph tree, IndexedWord node, Utterance h){
-		if(!tree.hasChildren(node)){
-			return;
-		}
-		Set<GrammaticalRelation> reltns = tree.childRelns(node);
-		for(GrammaticalRelation rel : reltns){
-			Set<IndexedWord> childrenWithReltn = tree.getChildrenWithReln(node, rel);
+	private void extractGrammaticalRelations(DependencyGraph graph, Utterance h){
+		for(int i = 1; i <= graph.size(); i++){
+			int relation = graph.relation(i);
+			if(relation == DependencyGraph.NONE){
+				continue;
+			}
+			int base = DependencyGraph.baseRelation(relation);
 
 			// Capture the subjects of the sentence
-			if(rel.getShortName().equals("nsubj")){
-				for(IndexedWord w : childrenWithReltn){
-					h.subjects.add(w.word());
-				}
+			if(base == NSUBJ){
+				h.subjects.add(graph.word(i));
 			}
 
 			// Capture the direct objects of the sentence
-			else if(rel.getShortName().equals("dobj")){
-				for(IndexedWord w : childrenWithReltn){
-					h.directObjects.add(w.word());
-				}
+			else if(base == DOBJ){
+				h.directObjects.add(graph.word(i));
 			}
 
-			else if(rel.getShortName().equals("nsubjpass")){
+			else if(base == NSUBJPASS){
 				h.isPassive = true;
-				for(IndexedWord w : childrenWithReltn){
-					h.subjects.add(w.word());
-				}
-			}
-
-			// Recurse regardless
-			for(IndexedWord w : childrenWithReltn){
-				extractGrammaticalRelations(tree, w, h);
+				h.subjects.add(graph.word(i));
 			}
 		}
 	}
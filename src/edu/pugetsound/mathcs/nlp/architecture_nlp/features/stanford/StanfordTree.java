@@ -104,6 +104,11 @@ public class StanfordTree implements MyTree {
 		return childList;
 	}
 	
+	@Override
+	public MyTree copy() {
+		return new StanfordTree(node.deepCopy());
+	}
+	
 	@Override
 	public String toString() {
 		return node.toString();
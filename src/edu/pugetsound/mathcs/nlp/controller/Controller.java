@@ -1,9 +1,15 @@
 package edu.pugetsound.mathcs.nlp.controller;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.Scanner;
 
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.mdp.FixedRewardSource;
+import edu.pugetsound.mathcs.nlp.util.Metrics;
+
 /**
  * This class contains the main input/output loop of the conversational agent
  * @author alchambers, kstern
@@ -12,6 +18,12 @@ public class Controller {
 	protected static PrintStream out;
 	protected static Scanner input;
 	protected static Model model;
+
+	// The reward given to every action when nobody is available to rate it
+	protected static final int NEUTRAL_REWARD = 3;
+
+	// The most utterances run while warming up the server
+	protected static final int WARMUP_UTTERANCES = 2000;
 		
 	
 	/**
@@ -25,10 +37,42 @@ public class Controller {
 
 	
 	/**
-	 * Main controller for the conversational agent. 
-	 * TODO: Add description of any command line arguments
+	 * Main controller for the conversational agent. With no arguments the agent converses
+	 * with the user on standard input and output.
+	 * 
+	 * Command line arguments:
+	 * <ul>
+	 * 	<li>--server [port] [maxInFlight] [budgetMillis] serves conversations over TCP on localhost.
+	 * 		maxInFlight caps the number of utterances analyzed at the same time and defaults
+	 * 		to the number of cores. budgetMillis limits how long the analysis of an utterance
+	 * 		may take before optional stages are skipped and defaults to no limit.</li>
+	 * 	<li>--server --warmup [port] [maxInFlight] [budgetMillis] runs utterances from the
+	 * 		Switchboard corpus through the models until their latencies settle before serving.</li>
+	 * 	<li>--replay transcriptDir outputFile [threads] replays every transcript in a directory,
+	 * 		each as its own conversation, and writes the agent's responses and per-stage timings
+	 * 		to the output file. threads defaults to the number of cores.</li>
+	 * 	<li>--load rate thinkMillis turns seconds drives synthetic conversations built from the
+	 * 		Switchboard corpus against the agent for the given number of seconds. New
+	 * 		conversations arrive at rate per second, each lasts the given number of turns and the
+	 * 		simulated user thinks for thinkMillis on average before each turn.</li>
+	 * </ul>
+	 * The server and replay modes print the latency histograms and counters of every stage
+	 * when they finish. The same metrics are exported over JMX while the agent runs.
 	 */
 	public static void main(String[] args){	
+		if(args.length > 0 && args[0].equals("--server")){
+			serve(args);
+			return;
+		}
+		if(args.length > 0 && args[0].equals("--replay")){
+			replay(args);
+			return;
+		}
+		if(args.length > 0 && args[0].equals("--load")){
+			load(args);
+			return;
+		}
+
 		setup(System.in, System.out);
 		model.loadState();
 		
@@ -48,5 +92,102 @@ public class Controller {
 			out.println("Agent: " + response);
 		}
 		model.saveState();
-	}	
+	}
+
+
+	/**
+	 * Serves conversations over TCP until the process is killed
+	 * @param args The command line arguments, starting with "--server"
+	 */
+	protected static void serve(String[] args){
+		boolean warmup = args.length > 1 && args[1].equals("--warmup");
+		if(warmup){
+			args = Arrays.copyOfRange(args, 1, args.length);
+		}
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : Server.DEFAULT_PORT;
+		int maxInFlight = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		long budgetMillis = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+		SessionManager sessions = new SessionManager();
+		sessions.loadState();
+		sessions.setTurnBudget(budgetMillis);
+
+		// Nobody is at the keyboard to rate the agent's actions. Since the ratings carry no
+		// information, the brain is not saved when serving.
+		sessions.setRewardSource(new FixedRewardSource(NEUTRAL_REWARD));
+
+		if(warmup){
+			try {
+				new WarmupDriver(sessions, new File(WarmupDriver.DEFAULT_CORPUS), WARMUP_UTTERANCES).run(System.out);
+			}
+			catch(IOException e){
+				System.err.println("Could not warm up: " + e);
+			}
+		}
+
+		// Print the latency histograms and counters when the server is killed
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> Metrics.dump(System.out)));
+
+		try {
+			new Server(sessions, port, maxInFlight, System.out).run();
+		}
+		catch(IOException e){
+			System.err.println("Could not start the server: " + e);
+		}
+	}
+
+	/**
+	 * Replays a directory of transcripts. Prints the usage and exits with status 2 if the
+	 * directory or the output file is missing.
+	 * @param args The command line arguments, starting with "--replay"
+	 */
+	protected static void replay(String[] args){
+		if(args.length < 3){
+			System.err.println("Usage: --replay transcriptDir outputFile [threads]");
+			System.exit(2);
+		}
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+		SessionManager sessions = new SessionManager();
+		sessions.loadState();
+		sessions.setRewardSource(new FixedRewardSource(NEUTRAL_REWARD));
+
+		try {
+			new TranscriptReplayer(sessions, threads).replay(new File(args[1]), new File(args[2]));
+			Metrics.dump(System.out);
+		}
+		catch(IOException e){
+			System.err.println("Could not replay transcripts: " + e);
+		}
+	}
+
+	/**
+	 * Generates synthetic load and reports how the agent copes. Prints the usage and exits with
+	 * status 2 if any of the four settings is missing.
+	 * @param args The command line arguments, starting with "--load"
+	 */
+	protected static void load(String[] args){
+		if(args.length < 5){
+			System.err.println("Usage: --load rate thinkMillis turns seconds");
+			System.exit(2);
+		}
+		double rate = Double.parseDouble(args[1]);
+		long thinkMillis = Long.parseLong(args[2]);
+		int turns = Integer.parseInt(args[3]);
+		long seconds = Long.parseLong(args[4]);
+
+		SessionManager sessions = new SessionManager();
+		sessions.loadState();
+		sessions.setRewardSource(new FixedRewardSource(NEUTRAL_REWARD));
+
+		try {
+			new LoadGenerator(sessions, new File(WarmupDriver.DEFAULT_CORPUS), rate, thinkMillis, turns).run(seconds, System.out);
+		}
+		catch(IOException e){
+			System.err.println("Could not read the corpus: " + e);
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+	}
 }
@@ -0,0 +1,254 @@
+package edu.pugetsound.mathcs.nlp.controller;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import edu.pugetsound.mathcs.nlp.architecture_nlp.datag.DialogueAct;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.datag.SwitchboardParser;
+import edu.pugetsound.mathcs.nlp.util.LatencyHistogram;
+
+/**
+ * Drives synthetic conversations against a SessionManager to find out how many turns per
+ * second one JVM sustains.
+ *
+ * New conversations arrive at random (as a Poisson process) at a configurable rate, whether
+ * or not earlier conversations have finished, so the load does not back off when the agent
+ * slows down. Every conversation has a fixed number of turns. Before each turn the simulated
+ * user thinks for an exponentially distributed time and then says an utterance sampled from
+ * the Switchboard corpus. Each conversation runs on its own virtual thread (a plain thread on
+ * JVMs older than 21).
+ *
+ * The report gives the throughput, the percentiles of the turn latency and of each stage,
+ * the heap usage and the GC pauses during the run. Everything runs offline in one process.
+ */
+public class LoadGenerator {
+
+	/**
+	 * The type of the JMX notification a HotSpot garbage collector sends after each collection
+	 */
+	protected static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+
+	protected final SessionManager sessions;
+	protected final List<String> utterances;
+	protected final double arrivalRate;
+	protected final long thinkTimeMillis;
+	protected final int turnsPerConversation;
+
+	protected final LatencyHistogram turnLatency = new LatencyHistogram("turn");
+	protected final Map<String, LatencyHistogram> stageLatency = new ConcurrentSkipListMap<String, LatencyHistogram>();
+	protected final LatencyHistogram gcPauses = new LatencyHistogram("gc pause");
+	protected final AtomicLong turns = new AtomicLong();
+	protected final AtomicLong failures = new AtomicLong();
+	protected final AtomicInteger active = new AtomicInteger();
+	protected final AtomicInteger maxActive = new AtomicInteger();
+
+	/**
+	 * Constructs a load generator
+	 * @param sessions The session manager that hosts the conversations
+	 * @param corpus A Switchboard .utt file or a directory of them
+	 * @param arrivalRate The mean number of new conversations per second
+	 * @param thinkTimeMillis The mean time the user waits before each utterance
+	 * @param turnsPerConversation The number of utterances in each conversation
+	 * @throws FileNotFoundException if the corpus cannot be found
+	 */
+	public LoadGenerator(SessionManager sessions, File corpus, double arrivalRate, long thinkTimeMillis,
+			int turnsPerConversation) throws FileNotFoundException {
+		if(arrivalRate <= 0 || thinkTimeMillis < 0 || turnsPerConversation < 1) {
+			throw new IllegalArgumentException("Invalid load parameters");
+		}
+		this.sessions = sessions;
+		this.arrivalRate = arrivalRate;
+		this.thinkTimeMillis = thinkTimeMillis;
+		this.turnsPerConversation = turnsPerConversation;
+
+		utterances = new ArrayList<String>();
+		for(DialogueAct act : new SwitchboardParser(corpus).getActs()) {
+			if(!act.getWords().isEmpty()) {
+				utterances.add(String.join(" ", act.getWords()));
+			}
+		}
+		if(utterances.isEmpty()) {
+			throw new IllegalArgumentException("The corpus contains no utterances");
+		}
+	}
+
+	/**
+	 * Starts new conversations for a while, waits for all of them to finish and reports
+	 * @param durationSeconds How long new conversations keep arriving
+	 * @param out Where to print the report
+	 * @throws InterruptedException if interrupted while generating load
+	 */
+	public void run(long durationSeconds, PrintStream out) throws InterruptedException {
+		List<NotificationEmitter> emitters = new ArrayList<NotificationEmitter>();
+		NotificationListener gcListener = this::recordGC;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if(gc instanceof NotificationEmitter) {
+				((NotificationEmitter) gc).addNotificationListener(gcListener, null, null);
+				emitters.add((NotificationEmitter) gc);
+			}
+		}
+		long gcCountBefore = gcCount();
+		long gcTimeBefore = gcTimeMillis();
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			pool.resetPeakUsage();
+		}
+
+		out.println(String.format("[load] %.2f conversations/s, %d ms think time, %d turns each, for %d s",
+				arrivalRate, thinkTimeMillis, turnsPerConversation, durationSeconds));
+
+		Random arrivals = new Random();
+		ExecutorService conversations = Server.newThreadPerTaskExecutor();
+		long start = System.nanoTime();
+		long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+		int launched = 0;
+		try {
+			long next = start;
+			while(next < end) {
+				long wait = next - System.nanoTime();
+				if(wait > 0) {
+					TimeUnit.NANOSECONDS.sleep(wait);
+				}
+				String id = "load-" + launched++;
+				long seed = arrivals.nextLong();
+				conversations.execute(() -> converse(id, new Random(seed)));
+				next += (long) (exponential(arrivals, 1.0 / arrivalRate) * 1e9);
+			}
+		}
+		finally {
+			conversations.shutdown();
+		}
+		while(!conversations.awaitTermination(1, TimeUnit.SECONDS)) {
+			out.println("[load] waiting for " + active.get() + " conversations to finish");
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		for(NotificationEmitter emitter : emitters) {
+			try {
+				emitter.removeNotificationListener(gcListener);
+			}
+			catch(javax.management.ListenerNotFoundException e) {
+				// Nothing to remove
+			}
+		}
+
+		out.println(String.format("[load] %d conversations, %d turns (%d failed) in %.1f s: %.2f turns/s, at most %d conversations at once",
+				launched, turns.get(), failures.get(), seconds, turns.get() / seconds, maxActive.get()));
+		out.println("[load] " + turnLatency);
+		for(LatencyHistogram stage : stageLatency.values()) {
+			out.println("[load] " + stage);
+		}
+		out.println(String.format("[load] heap: %.1f MB used now, %.1f MB at peak",
+				ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / 1e6, peakHeapBytes() / 1e6));
+		out.println(String.format("[load] gc: %d collections, %d ms total",
+				gcCount() - gcCountBefore, gcTimeMillis() - gcTimeBefore));
+		out.println("[load] " + gcPauses);
+	}
+
+	/**
+	 * Conducts one synthetic conversation
+	 * @param id The id of the session
+	 * @param rng The random numbers of this conversation
+	 */
+	protected void converse(String id, Random rng) {
+		maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+		try {
+			NLPModel model = sessions.openSession(id);
+			model.initialResponse();
+			for(int i = 0; i < turnsPerConversation && !model.conversationIsOver(); i++) {
+				Thread.sleep((long) exponential(rng, thinkTimeMillis));
+				String utterance = utterances.get(rng.nextInt(utterances.size()));
+
+				long start = System.nanoTime();
+				try {
+					model.getResponse(utterance);
+				}
+				catch(RuntimeException e) {
+					failures.incrementAndGet();
+					break;
+				}
+				turnLatency.recordSince(start);
+				turns.incrementAndGet();
+
+				for(Map.Entry<String, Long> stage : model.getLastTimings().entrySet()) {
+					stageLatency.computeIfAbsent(stage.getKey(), LatencyHistogram::new).record(stage.getValue());
+				}
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			sessions.closeSession(id);
+			active.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Records the duration of a garbage collection
+	 * @param notification A notification from a garbage collector
+	 * @param handback Not used
+	 */
+	protected void recordGC(Notification notification, Object handback) {
+		if(!GC_NOTIFICATION.equals(notification.getType())) {
+			return;
+		}
+		CompositeData info = (CompositeData) ((CompositeData) notification.getUserData()).get("gcInfo");
+		long durationMillis = (Long) info.get("duration");
+		gcPauses.record(TimeUnit.MILLISECONDS.toNanos(durationMillis));
+	}
+
+	/**
+	 * Returns a random number from an exponential distribution
+	 * @param rng The source of randomness
+	 * @param mean The mean of the distribution
+	 * @return The random number
+	 */
+	private static double exponential(Random rng, double mean) {
+		return -mean * Math.log(1.0 - rng.nextDouble());
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long gcTimeMillis() {
+		long time = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, gc.getCollectionTime());
+		}
+		return time;
+	}
+
+	private static long peakHeapBytes() {
+		long peak = 0;
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if(pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+}
@@ -1,32 +1,93 @@
 package edu.pugetsound.mathcs.nlp.controller;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
 import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.Action;
 import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.DecisionMaker;
 import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.mdp.HyperVariables;
 import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.mdp.QLearner;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.features.IncrementalAnalysis;
 import edu.pugetsound.mathcs.nlp.architecture_nlp.features.TextAnalyzer;
 import edu.pugetsound.mathcs.nlp.architecture_nlp.generator.DumbGenerator;
 import edu.pugetsound.mathcs.nlp.architecture_nlp.generator.Generator;
 import edu.pugetsound.mathcs.nlp.kb.KBController;
 import edu.pugetsound.mathcs.nlp.lang.Conversation;
 import edu.pugetsound.mathcs.nlp.lang.Utterance;
+import edu.pugetsound.mathcs.nlp.util.Deadline;
+import edu.pugetsound.mathcs.nlp.util.LatencyHistogram;
 import edu.pugetsound.mathcs.nlp.util.Logger;
+import edu.pugetsound.mathcs.nlp.util.Metrics;
+import edu.pugetsound.mathcs.nlp.util.OrderedWorkQueue;
 
 public class NLPModel implements Model {
 
 	protected static final String KNOWLEDGE_BASE_PATH = "knowledge/";
 	protected static final String INITIAL_GREETING = "Hello.";	
 
-	protected static Conversation conversation;		
-	protected static TextAnalyzer analyzer;
-	protected static DecisionMaker brain;
-	protected static KBController kb;
-	protected static Generator decoder;
-	protected static boolean conversationOver;
+	// Using a Markov Decision Process for the brain
+	protected static final double GAMMA = 0.1; // discounted value for the MDP	
+	protected static final int EXPLORE = 1000; // explore/exploit parameter (larger value corresponds to longer explore phase)
+
+	protected Conversation conversation;		
+	protected TextAnalyzer analyzer;
+	protected DecisionMaker brain;
+	protected KBController kb;
+	protected Generator decoder;
+	protected boolean conversationOver;
+
+	/**
+	 * How long each stage of the last turn took in nanoseconds, in the order the stages ran
+	 */
+	protected final LinkedHashMap<String, Long> lastTimings = new LinkedHashMap<String, Long>();
+
+	/**
+	 * True if this model owns the brain's stored state. Models created by a
+	 * SessionManager share their brain with other sessions, so the manager loads
+	 * and saves it instead.
+	 */
+	protected final boolean ownsBrainState;
+
+	/**
+	 * Work that is left over once a response has been generated (analyzing the agent's own
+	 * utterance and adding it to the conversation). It runs in the background while the user
+	 * reads the response and is finished before the next utterance is analyzed.
+	 */
+	protected final OrderedWorkQueue deferredWork;
+
+	/**
+	 * How long the analysis of an utterance may take in milliseconds, or 0 for no limit.
+	 * Optional analysis stages are skipped once a turn has used up its budget.
+	 */
+	protected long turnBudgetMillis = 0;
+
+	/**
+	 * Limits how many utterances are analyzed at the same time across conversations, or null
+	 * for no limit. The server holds a permit while it analyzes the user's utterance; the
+	 * deferred analysis of the agent's response and the speculative analysis of a line being
+	 * typed take one of their own.
+	 */
+	protected volatile Semaphore inFlight;
 
 	// Set to true if you want to start with a fresh brain
 	protected static boolean flushBrain = false; 
 
+	// Latency of each stage of a turn across all conversations
+	private static final LatencyHistogram ANALYZER_LATENCY = Metrics.histogram("model.analyzer");
+	private static final LatencyHistogram BRAIN_LATENCY = Metrics.histogram("model.brain");
+	private static final LatencyHistogram GENERATOR_LATENCY = Metrics.histogram("model.generator");
+	private static final LatencyHistogram RESPONSE_ANALYZER_LATENCY = Metrics.histogram("model.response_analyzer");
+	private static final LatencyHistogram TURN_LATENCY = Metrics.histogram("model.turn");
+	private static final LongAdder CLOSED_CONVERSATIONS = Metrics.counter("model.closed_conversations");
+
+	/**
+	 * The name of the metrics of the deferred work of all conversations, see OrderedWorkQueue
+	 */
+	public static final String DEFERRED_WORK_METRICS = "model.deferred_work";
+
 	/**
 	 * Constructs a new architecture based on an NLP pipeline
 	 */
@@ -35,13 +96,33 @@ public class NLPModel implements Model {
 		conversation = new Conversation();	
 		analyzer = new TextAnalyzer(kb);
 		decoder = new DumbGenerator(); 
-
-		// Using a Markov Decision Process for the brain
-		final double GAMMA = 0.1; // discounted value for the MDP	
-		final int EXPLORE = 1000; // explore/exploit parameter (larger value corresponds to longer explore phase)
 		brain = new QLearner(new HyperVariables(GAMMA, EXPLORE));
 
 		conversationOver = false;
+		ownsBrainState = true;
+		deferredWork = new OrderedWorkQueue(OrderedWorkQueue.newDaemonPool(1, "deferred-work"), DEFERRED_WORK_METRICS);
+	}
+
+	/**
+	 * Constructs a model for a single conversation on top of components shared with
+	 * other conversations. Only the per-conversation state (the conversation itself,
+	 * its knowledge base and the analyzers that write to it) is created here.
+	 * 
+	 * @param sharedAnalyzer An analyzer whose NLP pipeline, SPF parser and classifier are shared
+	 * @param sharedBrain A QLearner whose Q-table is shared
+	 * @param decoder A generator shared by all conversations
+	 * @param deferredExecutor The executor that runs the deferred work of all conversations
+	 */
+	protected NLPModel(TextAnalyzer sharedAnalyzer, QLearner sharedBrain, Generator decoder, Executor deferredExecutor) {
+		kb = new KBController(KNOWLEDGE_BASE_PATH);
+		conversation = new Conversation();
+		analyzer = new TextAnalyzer(sharedAnalyzer, kb);
+		brain = new QLearner(sharedBrain);
+		this.decoder = decoder;
+
+		conversationOver = false;
+		ownsBrainState = false;
+		deferredWork = new OrderedWorkQueue(deferredExecutor, DEFERRED_WORK_METRICS);
 	}
 
 	@Override
@@ -51,61 +132,162 @@ public class NLPModel implements Model {
 
 	@Override
 	public String getResponse(String utterance) {
-		long start, stop;
+		long start;
+		long turnStart = System.nanoTime();
+		Deadline deadline = turnBudgetMillis > 0 ? Deadline.after(turnBudgetMillis) : Deadline.NONE;
 		if(Logger.debug()) {
 			System.out.println("\n\n==== STARTING ROUND ====");
 		}
 
+		// The last response has to be part of the conversation before we analyze the reply to it
+		deferredWork.awaitIdle();
+		lastTimings.clear();
+
 		// Process the typed input
-		start = System.currentTimeMillis();
-		Utterance utt = analyzer.analyze(utterance, conversation);
-		stop = System.currentTimeMillis();		
+		start = System.nanoTime();
+		Utterance utt = analyzer.analyze(utterance, conversation, deadline);
+		recordTiming("analyzer", ANALYZER_LATENCY, start);
 		conversation.addUtterance(utt);
-		if(Logger.debug()) {
-			System.out.println("Time to run analyzer: " + (stop-start) + " milliseconds");
-		}
 
 
 		// Get an action from the decision maker
-		start = System.currentTimeMillis();
+		start = System.nanoTime();
 		Action action = brain.getAction(conversation);
-		stop = System.currentTimeMillis();
-		if(Logger.debug()) {
-			System.out.println("Time to run brain: " + (stop-start) + " milliseconds");
-		}
+		recordTiming("brain", BRAIN_LATENCY, start);
 
 		// Process the action and produce a response for the user
-		start = System.currentTimeMillis();
+		start = System.nanoTime();
 		String response = decoder.generateResponse(conversation, action, kb);
-		stop = System.currentTimeMillis();
-		if(Logger.debug()) {
-			System.out.println("Time to generate response: " + (stop-start) + " milliseconds");
-		}
+		recordTiming("generator", GENERATOR_LATENCY, start);
 
-		//TODO: We know the DialogueAct of the agent's utterance from above (the variable action)
-		// We need to pass this to the analyzer so we're not running the dialogue act classifier which
-		// potentially gives an incorrect DialogueAct prediction when we have the correct prediction
-		// Possible solutions include having only 1 enum type (in which case I think it should be moved to
-		// the lang folder). However, this increases the dimensionality of the q-table for Q-learning.
-		// We could also define an Interface of the possible actions. This would require some refactoring of the
-		// datag package code which I'm just not familiar with. This would be a broader system wide change.
-		start = System.currentTimeMillis();
-		Utterance agentUtt = analyzer.analyze(response, conversation);
-		stop = System.currentTimeMillis();
-		if(Logger.debug()) {
-			System.out.println("Time to analyze response: " + (stop-start) + " milliseconds");
-		}
-		conversation.addUtterance(agentUtt);
 		if(action.equals(Action.CONVENTIONAL_CLOSING)) {
 			conversationOver = true;
-		}		
+			CLOSED_CONVERSATIONS.increment();
+		}
+
+		TURN_LATENCY.recordSince(turnStart);
+
+		// The user doesn't need to wait for the agent's own utterance to be analyzed, so that
+		// happens in the background. We know the DialogueAct of the agent's utterance from the
+		// action, so the analyzer takes it from there instead of running the (possibly wrong)
+		// dialogue act classifier. If the analysis fails, the response is still added (with just
+		// its dialogue act) so the conversation keeps taking turns, and the failure is rethrown
+		// to be counted by the queue
+		deferredWork.submit(() -> {
+			Semaphore permits = inFlight;
+			if(permits != null) {
+				permits.acquireUninterruptibly();
+			}
+			long deferredStart = System.nanoTime();
+			Utterance agentUtt;
+			try {
+				agentUtt = analyzer.analyze(response, action, conversation);
+			}
+			catch(RuntimeException e) {
+				Utterance fallback = new Utterance(response);
+				fallback.daTag = action.toDialogueActTag();
+				conversation.addUtterance(fallback);
+				throw e;
+			}
+			finally {
+				if(permits != null) {
+					permits.release();
+				}
+			}
+			recordTiming("response analyzer", RESPONSE_ANALYZER_LATENCY, deferredStart);
+			conversation.addUtterance(agentUtt);
+			if(Logger.debug()) {
+				System.out.println("\nThe agent's utterance is: ");
+				System.out.println(agentUtt);
+			}
+		});
 		return response;
 	}
 
+	/**
+	 * Returns how long each stage of the last turn took. This waits for the deferred work of
+	 * the last turn to finish so its timing is included.
+	 * @return A map from the name of each stage to its duration in nanoseconds, in the
+	 * 			order the stages ran
+	 */
+	public Map<String, Long> getLastTimings() {
+		deferredWork.awaitIdle();
+		return new LinkedHashMap<String, Long>(lastTimings);
+	}
+
+	/**
+	 * Limits how long the analysis of each utterance may take. When a turn runs out of
+	 * time, anaphora resolution and semantic analysis are skipped so the agent can still
+	 * answer on time.
+	 * @param millis The budget of a turn in milliseconds, or 0 for no limit
+	 */
+	public void setTurnBudget(long millis) {
+		if(millis < 0) {
+			throw new IllegalArgumentException("The turn budget cannot be negative");
+		}
+		turnBudgetMillis = millis;
+	}
+
+	/**
+	 * Counts the analysis this model does in the background against a limit shared with
+	 * other conversations (see inFlight). A caller that holds a permit must wait for the
+	 * deferred work of the last turn before it takes the permit, or the deferred work may
+	 * wait for that permit while the turn waits for the deferred work.
+	 * @param inFlight The permits, or null for no limit
+	 */
+	public void setInFlightLimit(Semaphore inFlight) {
+		this.inFlight = inFlight;
+	}
+
+	/**
+	 * Returns an analysis of the lines of this conversation while they are being typed. The
+	 * background work fills the analyzer's cache, so getResponse() has less left to do once
+	 * the line is entered. The background work counts against the in-flight limit and is
+	 * dropped while every permit is taken.
+	 * @return The incremental analysis
+	 */
+	public IncrementalAnalysis incrementalAnalysis() {
+		return new IncrementalAnalysis(analyzer, conversation, inFlight);
+	}
+
+	/**
+	 * Returns true once every component of the model has finished loading. Components
+	 * that are not needed right away (such as the SPF parser) finish loading in the
+	 * background after construction; until then they are skipped.
+	 * @return True if every component has finished loading
+	 */
+	public boolean isReady() {
+		return analyzer.isReady();
+	}
+
+	/**
+	 * Blocks until every component of the model has finished loading
+	 */
+	public void awaitReady() {
+		analyzer.awaitReady();
+	}
+
+	/**
+	 * Returns how long each component of the model took to load
+	 * @return A map from the name of each loaded component to its load time in nanoseconds
+	 */
+	public Map<String, Long> getLoadTimes() {
+		return analyzer.getLoadTimes();
+	}
+
+	/**
+	 * Returns the queue of work deferred until after responses are sent, whose depth and
+	 * lag show whether the background work keeps up with the conversation
+	 * @return The queue of deferred work
+	 */
+	public OrderedWorkQueue getDeferredWork() {
+		return deferredWork;
+	}
+
 	@Override
 	public void loadState() {
 		// Need to load the brain so we're not starting from scratch every time
-		if(!flushBrain) {
+		if(ownsBrainState && !flushBrain) {
 			brain.readFromFile();
 		}
 	}
@@ -113,14 +295,25 @@ public class NLPModel implements Model {
 	@Override
 	public void saveState() {
 		// Need to save the brain so we can reload later
-		brain.saveToFile();
+		if(ownsBrainState) {
+			brain.saveToFile();
+		}
 	}
 
 	@Override
 	public String initialResponse() {
-		Utterance agentUtt = analyzer.analyze(INITIAL_GREETING, conversation);
+		Utterance agentUtt = analyzer.analyze(INITIAL_GREETING, Action.CONVENTIONAL_OPENING, conversation);
 		conversation.addUtterance(agentUtt);		
 		return INITIAL_GREETING;		
 	}
 
+	/**
+	 * Records how long a stage of the current turn took
+	 * @param stage The name of the stage
+	 * @param histogram The histogram of the stage's latencies across all conversations
+	 * @param start The value of System.nanoTime() when the stage started
+	 */
+	private void recordTiming(String stage, LatencyHistogram histogram, long start) {
+		lastTimings.put(stage, histogram.recordSince(start));
+	}
 }
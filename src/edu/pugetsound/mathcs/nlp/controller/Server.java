@@ -0,0 +1,224 @@
+package edu.pugetsound.mathcs.nlp.controller;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves conversations over a plain TCP line protocol on localhost.
+ *
+ * Each connection is one conversation. When a client connects, the server sends the agent's
+ * greeting on a single line. After that, every line the client sends is an utterance and
+ * the server answers with exactly one line containing the agent's response. The server closes
+ * the connection once the conversation is over.
+ *
+ * Every connection runs on its own virtual thread (a plain thread on JVMs older than 21), so
+ * thousands of idle conversations cost little more than their sockets. All conversations are
+ * sessions of one SessionManager and share its models. The number of utterances being analyzed
+ * at the same time is capped by a semaphore so the CoreNLP work cannot oversubscribe the CPU.
+ * The cap also covers the analysis the sessions do in the background, see
+ * NLPModel.setInFlightLimit().
+ * The latency of every request, including time spent waiting for the cap, is reported.
+ */
+public class Server {
+
+	/**
+	 * The default port of the server
+	 */
+	public static final int DEFAULT_PORT = 4250;
+
+	protected final SessionManager sessions;
+	protected final int port;
+	protected final Semaphore inFlight;
+	protected final int maxInFlight;
+	protected final PrintStream log;
+
+	protected final AtomicLong connectionCounter = new AtomicLong();
+	protected final AtomicLong requestCount = new AtomicLong();
+	protected final AtomicLong totalLatencyNanos = new AtomicLong();
+	protected final AtomicLong maxLatencyNanos = new AtomicLong();
+
+	protected volatile ServerSocket socket;
+
+	/**
+	 * Constructs a new server
+	 * @param sessions The session manager that hosts the conversations
+	 * @param port The port to listen on
+	 * @param maxInFlight The maximum number of utterances analyzed at the same time
+	 * @param log Where to report latencies and connection events
+	 */
+	public Server(SessionManager sessions, int port, int maxInFlight, PrintStream log) {
+		if(maxInFlight < 1) {
+			throw new IllegalArgumentException("maxInFlight must be positive");
+		}
+		this.sessions = sessions;
+		this.port = port;
+		this.maxInFlight = maxInFlight;
+		this.inFlight = new Semaphore(maxInFlight, true);
+		this.log = log;
+		sessions.setInFlightLimit(inFlight);
+	}
+
+	/**
+	 * Accepts connections until the server is stopped. This method blocks.
+	 * @throws IOException if the server socket cannot be opened
+	 */
+	public void run() throws IOException {
+		ExecutorService connections = newThreadPerTaskExecutor();
+		socket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+		log.println("[server] Listening on " + socket.getLocalSocketAddress()
+				+ " with at most " + maxInFlight + " analyses in flight");
+		try {
+			while(!socket.isClosed()) {
+				Socket client;
+				try {
+					client = socket.accept();
+				}
+				catch(IOException e) {
+					if(socket.isClosed()) {
+						break;
+					}
+					throw e;
+				}
+				String id = "conn-" + connectionCounter.incrementAndGet();
+				connections.execute(() -> converse(id, client));
+			}
+		}
+		finally {
+			connections.shutdown();
+		}
+	}
+
+	/**
+	 * Stops accepting new connections. Conversations in progress are allowed to finish.
+	 */
+	public void stop() {
+		ServerSocket s = socket;
+		if(s != null) {
+			try {
+				s.close();
+			}
+			catch(IOException e) {
+				System.out.println(e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of requests answered so far
+	 * @return The number of requests answered so far
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * Returns the mean latency of the requests answered so far
+	 * @return The mean latency in milliseconds
+	 */
+	public double getMeanLatencyMillis() {
+		long count = requestCount.get();
+		if(count == 0) {
+			return 0.0;
+		}
+		return totalLatencyNanos.get() / (double) count / 1e6;
+	}
+
+	/**
+	 * Returns the largest latency of the requests answered so far
+	 * @return The largest latency in milliseconds
+	 */
+	public double getMaxLatencyMillis() {
+		return maxLatencyNanos.get() / 1e6;
+	}
+
+	/**
+	 * Conducts a single conversation over a connection
+	 * @param id The id of the conversation
+	 * @param client The connection to the client
+	 */
+	protected void converse(String id, Socket client) {
+		try(Socket s = client;
+			BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+			PrintWriter out = new PrintWriter(s.getOutputStream(), true)) {
+
+			NLPModel model = sessions.openSession(id);
+			log.println("[server] " + id + " opened (" + sessions.numSessions() + " open)");
+
+			out.println(respond(id, model, null));
+			String line;
+			while(!model.conversationIsOver() && (line = in.readLine()) != null) {
+				out.println(respond(id, model, line));
+			}
+		}
+		catch(IOException e) {
+			log.println("[server] " + id + " " + e);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			sessions.closeSession(id);
+			log.println("[server] " + id + " closed (" + sessions.numSessions() + " open)");
+		}
+	}
+
+	/**
+	 * Computes a response while holding one of the in-flight permits and reports its latency
+	 * @param id The id of the conversation
+	 * @param model The model conducting the conversation
+	 * @param utterance The utterance to respond to, or null for the initial greeting
+	 * @return The agent's response
+	 * @throws InterruptedException if interrupted while waiting for a permit
+	 */
+	protected String respond(String id, NLPModel model, String utterance) throws InterruptedException {
+		long start = System.nanoTime();
+		// The deferred work of the last turn needs a permit of its own, so it has to finish
+		// before this turn takes one
+		model.getDeferredWork().awaitIdle();
+		inFlight.acquire();
+		long admitted = System.nanoTime();
+		String response;
+		try {
+			response = utterance == null ? model.initialResponse() : model.getResponse(utterance);
+		}
+		finally {
+			inFlight.release();
+		}
+		long stop = System.nanoTime();
+
+		long latency = stop - start;
+		requestCount.incrementAndGet();
+		totalLatencyNanos.addAndGet(latency);
+		maxLatencyNanos.accumulateAndGet(latency, Math::max);
+		log.println(String.format("[server] %s: %.1f ms (%.1f ms waiting)", id,
+				latency / 1e6, (admitted - start) / 1e6));
+
+		// A response is always sent as a single line
+		return response.replace('\n', ' ');
+	}
+
+	/**
+	 * Creates an executor that starts a new virtual thread for every task. Virtual threads
+	 * only exist on Java 21 and newer, so older JVMs fall back to a pool of plain threads.
+	 * @return An executor that runs every task on its own thread
+	 */
+	protected static ExecutorService newThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch(ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+}
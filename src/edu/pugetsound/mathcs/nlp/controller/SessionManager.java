@@ -0,0 +1,202 @@
+package edu.pugetsound.mathcs.nlp.controller;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.mdp.HyperVariables;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.mdp.QLearner;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.mdp.RewardSource;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.features.TextAnalyzer;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.generator.DumbGenerator;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.generator.Generator;
+import edu.pugetsound.mathcs.nlp.kb.KBController;
+import edu.pugetsound.mathcs.nlp.util.OrderedWorkQueue;
+
+/**
+ * Hosts many concurrent conversations inside a single JVM.
+ *
+ * The heavy, read-mostly components (the CoreNLP pipeline, the SPF parser, the dialogue
+ * act classifiers and the Q-table) are loaded exactly once by the manager. Each session
+ * is an NLPModel that reuses those components and only holds the state of its own
+ * conversation: the utterances so far, its knowledge base and the bookkeeping for the
+ * last action taken. Adding a session therefore costs a few small objects rather than
+ * another copy of the models.
+ *
+ * Because every session trains the same Q-table, the brain's stored state is loaded and
+ * saved through the manager and not through the individual sessions.
+ */
+public class SessionManager {
+
+	/**
+	 * The analyzer whose heavy components are shared by all sessions
+	 */
+	protected final TextAnalyzer analyzer;
+
+	/**
+	 * The QLearner whose Q-table is shared by all sessions
+	 */
+	protected final QLearner brain;
+
+	/**
+	 * The generator shared by all sessions
+	 */
+	protected final Generator decoder;
+
+	/**
+	 * The threads that run the deferred work of all sessions. Each session's work still
+	 * runs in order, see OrderedWorkQueue.
+	 */
+	protected final ExecutorService deferredExecutor;
+
+	/**
+	 * All open sessions indexed by their id
+	 */
+	protected final ConcurrentHashMap<String, NLPModel> sessions;
+
+	/**
+	 * The turn budget given to new sessions in milliseconds, or 0 for no limit
+	 */
+	protected volatile long turnBudgetMillis = 0;
+
+	/**
+	 * The in-flight limit given to new sessions, or null for no limit
+	 */
+	protected volatile Semaphore inFlight;
+
+	/**
+	 * Loads the shared components. This is the expensive step, it only happens once.
+	 */
+	public SessionManager() {
+		analyzer = new TextAnalyzer(new KBController(NLPModel.KNOWLEDGE_BASE_PATH));
+		brain = new QLearner(new HyperVariables(NLPModel.GAMMA, NLPModel.EXPLORE));
+		decoder = new DumbGenerator();
+		deferredExecutor = OrderedWorkQueue.newDaemonPool(Runtime.getRuntime().availableProcessors(), "deferred-work");
+		sessions = new ConcurrentHashMap<String, NLPModel>();
+	}
+
+	/**
+	 * Opens a new conversation
+	 * @param id A unique id for the conversation
+	 * @return The model that conducts the conversation
+	 * @throws IllegalStateException if a session with the given id is already open
+	 */
+	public NLPModel openSession(String id) throws IllegalStateException {
+		NLPModel session = new NLPModel(analyzer, brain, decoder, deferredExecutor);
+		session.setTurnBudget(turnBudgetMillis);
+		session.setInFlightLimit(inFlight);
+		if(sessions.putIfAbsent(id, session) != null) {
+			throw new IllegalStateException("Session " + id + " is already open");
+		}
+		return session;
+	}
+
+	/**
+	 * Returns an open conversation
+	 * @param id The id of the conversation
+	 * @return The model that conducts the conversation or null if there is no such session
+	 */
+	public Model getSession(String id) {
+		return sessions.get(id);
+	}
+
+	/**
+	 * Closes a conversation and releases its state
+	 * @param id The id of the conversation
+	 * @return True if a session was closed, false if there was no such session
+	 */
+	public boolean closeSession(String id) {
+		return sessions.remove(id) != null;
+	}
+
+	/**
+	 * Returns the ids of all open conversations
+	 * @return The ids of all open conversations
+	 */
+	public Set<String> sessionIds() {
+		return sessions.keySet();
+	}
+
+	/**
+	 * Returns the number of open conversations
+	 * @return The number of open conversations
+	 */
+	public int numSessions() {
+		return sessions.size();
+	}
+
+	/**
+	 * Changes who rates the actions chosen by the brain. Only sessions opened after
+	 * this call are affected.
+	 * @param rewards The source of rewards for chosen actions
+	 */
+	public void setRewardSource(RewardSource rewards) {
+		brain.setRewardSource(rewards);
+	}
+
+	/**
+	 * Returns true once every component of the shared models has finished loading. Components
+	 * that are not needed right away (such as the SPF parser) finish loading in the
+	 * background after construction; until then they are skipped.
+	 * @return True if every component has finished loading
+	 */
+	public boolean isReady() {
+		return analyzer.isReady();
+	}
+
+	/**
+	 * Blocks until every component of the shared models has finished loading
+	 */
+	public void awaitReady() {
+		analyzer.awaitReady();
+	}
+
+	/**
+	 * Returns how long each component of the shared models took to load
+	 * @return A map from the name of each loaded component to its load time in nanoseconds
+	 */
+	public Map<String, Long> getLoadTimes() {
+		return analyzer.getLoadTimes();
+	}
+
+	/**
+	 * Limits how long the analysis of each utterance may take. Only sessions opened after
+	 * this call are affected.
+	 * @param millis The budget of a turn in milliseconds, or 0 for no limit
+	 * @see NLPModel#setTurnBudget(long)
+	 */
+	public void setTurnBudget(long millis) {
+		if(millis < 0) {
+			throw new IllegalArgumentException("The turn budget cannot be negative");
+		}
+		turnBudgetMillis = millis;
+	}
+
+	/**
+	 * Counts the background analysis of every session against a limit. Only sessions opened
+	 * after this call are affected.
+	 * @param inFlight The permits, or null for no limit
+	 * @see NLPModel#setInFlightLimit(Semaphore)
+	 */
+	public void setInFlightLimit(Semaphore inFlight) {
+		this.inFlight = inFlight;
+	}
+
+	/**
+	 * Loads the state of the shared brain so we're not starting from scratch every time
+	 */
+	public void loadState() {
+		if(!NLPModel.flushBrain) {
+			brain.readFromFile();
+		}
+	}
+
+	/**
+	 * Saves the state of the shared brain so we can reload it later
+	 */
+	public void saveState() {
+		brain.saveToFile();
+	}
+}
@@ -0,0 +1,155 @@
+package edu.pugetsound.mathcs.nlp.controller;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Replays recorded transcripts through the agent, one conversation per transcript.
+ *
+ * A transcript is a text file in which every non-blank line is something the user typed.
+ * Each transcript is replayed through its own session of a shared SessionManager, and the
+ * transcripts are spread over a pool of worker threads so a directory of transcripts is
+ * replayed in parallel. Nobody is available to rate the agent's actions, so every action gets
+ * the same reward and the brain is not saved.
+ *
+ * The agent's responses and the time spent in each stage of every turn are written to an
+ * output file in the order of the transcripts' file names.
+ */
+public class TranscriptReplayer {
+
+	protected final SessionManager sessions;
+	protected final int numThreads;
+
+	/**
+	 * Constructs a replayer
+	 * @param sessions The session manager that hosts the replayed conversations
+	 * @param numThreads The number of transcripts replayed at the same time
+	 */
+	public TranscriptReplayer(SessionManager sessions, int numThreads) {
+		if(numThreads < 1) {
+			throw new IllegalArgumentException("numThreads must be positive");
+		}
+		this.sessions = sessions;
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * Replays every transcript in a directory and writes the results to a file
+	 * @param transcriptDir A directory of transcripts
+	 * @param output The file the results are written to
+	 * @throws IOException if a transcript cannot be read or the output cannot be written
+	 */
+	public void replay(File transcriptDir, File output) throws IOException {
+		File[] files = transcriptDir.listFiles(File::isFile);
+		if(files == null) {
+			throw new FileNotFoundException(transcriptDir + " is not a directory");
+		}
+		Arrays.sort(files);
+
+		long start = System.nanoTime();
+		ExecutorService workers = Executors.newFixedThreadPool(numThreads);
+		List<Future<Result>> results = new ArrayList<Future<Result>>();
+		for(File file : files) {
+			results.add(workers.submit(() -> replay(file)));
+		}
+		workers.shutdown();
+
+		int turns = 0;
+		try(PrintWriter out = new PrintWriter(output, StandardCharsets.UTF_8.name())) {
+			for(Future<Result> future : results) {
+				Result result = future.get();
+				out.print(result.log);
+				turns += result.turns;
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			out.println(String.format("=== %d transcripts, %d turns in %.1f s (%.1f turns/s, %d threads) ===",
+					files.length, turns, seconds, turns / seconds, numThreads));
+		}
+		catch(InterruptedException e) {
+			workers.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		catch(ExecutionException e) {
+			workers.shutdownNow();
+			throw new IOException("Could not replay transcript", e.getCause());
+		}
+	}
+
+	/**
+	 * Replays a single transcript
+	 * @param transcript A transcript
+	 * @return The formatted responses and timings of the conversation
+	 * @throws IOException if the transcript cannot be read
+	 */
+	protected Result replay(File transcript) throws IOException {
+		List<String> lines = Files.readAllLines(transcript.toPath(), StandardCharsets.UTF_8);
+		String id = transcript.getName();
+		NLPModel model = sessions.openSession(id);
+
+		StringBuilder log = new StringBuilder();
+		int turns = 0;
+		try {
+			log.append("=== ").append(id).append(" ===\n");
+			log.append("Agent: ").append(model.initialResponse()).append("\n");
+			for(String line : lines) {
+				if(line.trim().isEmpty()) {
+					continue;
+				}
+				if(model.conversationIsOver()) {
+					log.append("(conversation ended before the end of the transcript)\n");
+					break;
+				}
+				log.append("> ").append(line).append("\n");
+				log.append("Agent: ").append(model.getResponse(line)).append("\n");
+				log.append(formatTimings(model.getLastTimings())).append("\n");
+				turns++;
+			}
+			log.append("\n");
+		}
+		finally {
+			sessions.closeSession(id);
+		}
+		return new Result(log.toString(), turns);
+	}
+
+	/**
+	 * Formats the stage timings of a turn on a single line
+	 * @param timings A map from each stage to its duration in nanoseconds
+	 * @return The formatted timings
+	 */
+	protected static String formatTimings(Map<String, Long> timings) {
+		StringBuilder str = new StringBuilder("\t");
+		long total = 0;
+		for(Map.Entry<String, Long> stage : timings.entrySet()) {
+			str.append(String.format("%s: %.2f ms, ", stage.getKey(), stage.getValue() / 1e6));
+			total += stage.getValue();
+		}
+		str.append(String.format("total: %.2f ms", total / 1e6));
+		return str.toString();
+	}
+
+	/**
+	 * The formatted output of a replayed transcript
+	 */
+	protected static class Result {
+		final String log;
+		final int turns;
+
+		Result(String log, int turns) {
+			this.log = log;
+			this.turns = turns;
+		}
+	}
+}
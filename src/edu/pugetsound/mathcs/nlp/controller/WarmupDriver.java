@@ -0,0 +1,227 @@
+package edu.pugetsound.mathcs.nlp.controller;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.Action;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.mdp.FixedRewardSource;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.mdp.HyperVariables;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.brain.mdp.QLearner;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.datag.DAClassifier;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.datag.DialogueAct;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.datag.SwitchboardParser;
+import edu.pugetsound.mathcs.nlp.architecture_nlp.features.TextAnalyzer;
+import edu.pugetsound.mathcs.nlp.kb.KBController;
+import edu.pugetsound.mathcs.nlp.lang.Conversation;
+import edu.pugetsound.mathcs.nlp.lang.Utterance;
+import edu.pugetsound.mathcs.nlp.util.PathFormat;
+
+/**
+ * Warms up the JIT compiler before real users arrive.
+ *
+ * The first turns after startup are much slower than later ones because the CoreNLP, Mallet
+ * and SPF code has not been compiled yet. The driver runs utterances sampled from the
+ * Switchboard corpus through the shared TextAnalyzer, the dialogue act classifier and a
+ * QLearner until the latency of every stage stops improving.
+ *
+ * A stage is considered to have reached steady state once the mean latency of a window of
+ * utterances is within TOLERANCE of the mean of the window before it. The QLearner used here
+ * is a scratch copy, so warming up does not train the shared Q-table.
+ */
+public class WarmupDriver {
+
+	/**
+	 * The Switchboard files the warm-up utterances are sampled from
+	 */
+	public static final String DEFAULT_CORPUS = PathFormat.absolutePathFromRoot("resources/switchboard_scrubbed3/sw00utt");
+
+	/**
+	 * The number of utterances whose latencies are averaged together
+	 */
+	protected static final int WINDOW = 20;
+
+	/**
+	 * How much the mean latency of consecutive windows may differ at steady state
+	 */
+	protected static final double TOLERANCE = 0.1;
+
+	/**
+	 * The number of turns in each warm-up conversation
+	 */
+	protected static final int TURNS_PER_CONVERSATION = 10;
+
+	protected final SessionManager sessions;
+	protected final File corpus;
+	protected final int maxUtterances;
+	protected final Map<String, Stage> stages = new LinkedHashMap<String, Stage>();
+
+	/**
+	 * Constructs a warm-up driver
+	 * @param sessions The session manager whose shared models are warmed up
+	 * @param corpus A Switchboard .utt file or a directory of them
+	 * @param maxUtterances The most utterances to run, even if steady state is not reached
+	 */
+	public WarmupDriver(SessionManager sessions, File corpus, int maxUtterances) {
+		this.sessions = sessions;
+		this.corpus = corpus;
+		this.maxUtterances = maxUtterances;
+		for(String name : new String[]{"analyzer", "classifier", "brain"}) {
+			stages.put(name, new Stage(name));
+		}
+	}
+
+	/**
+	 * Runs utterances through the analysis pipeline until every stage reaches steady state
+	 * or maxUtterances have been run
+	 * @param log Where to report progress and the latencies of each stage
+	 * @return True if every stage reached steady state
+	 * @throws FileNotFoundException if the corpus cannot be found
+	 */
+	public boolean run(PrintStream log) throws FileNotFoundException {
+		List<String> utterances = sample(new SwitchboardParser(corpus).getActs());
+
+		// Components that load in the background need warming up too
+		sessions.awaitReady();
+		log.println("[warmup] Running up to " + utterances.size() + " utterances");
+
+		TextAnalyzer analyzer = null;
+		QLearner brain = new QLearner(new HyperVariables(NLPModel.GAMMA, NLPModel.EXPLORE));
+		brain.setRewardSource(new FixedRewardSource(Controller.NEUTRAL_REWARD));
+		DAClassifier classifier = sessions.analyzer.getDialogueClassifier();
+		KBController kb = null;
+		Conversation conversation = null;
+
+		int count = 0;
+		int failures = 0;
+		int turn = 0;
+		for(String text : utterances) {
+			if(allSteady()) {
+				break;
+			}
+			if(turn % TURNS_PER_CONVERSATION == 0) {
+				kb = new KBController(NLPModel.KNOWLEDGE_BASE_PATH);
+				analyzer = new TextAnalyzer(sessions.analyzer, kb);
+				conversation = new Conversation();
+				conversation.addUtterance(analyzer.analyze(NLPModel.INITIAL_GREETING, Action.CONVENTIONAL_OPENING, conversation));
+			}
+
+			count++;
+			turn++;
+			try {
+				long start = System.nanoTime();
+				Utterance utt = analyzer.analyze(text, conversation);
+				stages.get("analyzer").record(System.nanoTime() - start);
+				conversation.addUtterance(utt);
+
+				start = System.nanoTime();
+				classifier.classify(utt, conversation);
+				stages.get("classifier").record(System.nanoTime() - start);
+
+				start = System.nanoTime();
+				Action action = brain.getAction(conversation);
+				stages.get("brain").record(System.nanoTime() - start);
+
+				String response = sessions.decoder.generateResponse(conversation, action, kb);
+				conversation.addUtterance(analyzer.analyze(response, action, conversation));
+			}
+			catch(RuntimeException e) {
+				// Corpus utterances are messy. Start a new conversation and move on.
+				failures++;
+				turn = 0;
+			}
+		}
+
+		log.println("[warmup] Ran " + count + " utterances (" + failures + " failed)");
+		for(Stage stage : stages.values()) {
+			log.println("[warmup] " + stage);
+		}
+		return allSteady();
+	}
+
+	/**
+	 * Returns the utterances of the corpus in a random (but repeatable) order
+	 */
+	private List<String> sample(List<DialogueAct> acts) {
+		List<String> utterances = new ArrayList<String>();
+		for(DialogueAct act : acts) {
+			if(!act.getWords().isEmpty()) {
+				utterances.add(String.join(" ", act.getWords()));
+			}
+		}
+		Collections.shuffle(utterances, new Random(425));
+		return utterances.subList(0, Math.min(maxUtterances, utterances.size()));
+	}
+
+	/**
+	 * Returns true if every stage has reached steady state
+	 */
+	private boolean allSteady() {
+		for(Stage stage : stages.values()) {
+			if(stage.steadyAt < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The latencies of a single stage
+	 */
+	protected static class Stage {
+		final String name;
+		final long[] window = new long[WINDOW];
+		int count = 0;
+		long first = -1;
+		double previousMean = -1;
+		double steadyMean = -1;
+		int steadyAt = -1;
+
+		Stage(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Records the latency of one utterance and checks for steady state each time the
+		 * window fills up
+		 * @param nanos The latency in nanoseconds
+		 */
+		void record(long nanos) {
+			if(first < 0) {
+				first = nanos;
+			}
+			window[count % WINDOW] = nanos;
+			count++;
+			if(count % WINDOW != 0 || steadyAt >= 0) {
+				return;
+			}
+
+			double mean = 0;
+			for(long latency : window) {
+				mean += latency;
+			}
+			mean /= WINDOW;
+			if(previousMean > 0 && Math.abs(mean - previousMean) <= TOLERANCE * previousMean) {
+				steadyAt = count;
+				steadyMean = mean;
+			}
+			previousMean = mean;
+		}
+
+		@Override
+		public String toString() {
+			if(steadyAt < 0) {
+				return String.format("%s: first %.2f ms, last window %.2f ms, not steady after %d utterances",
+						name, first / 1e6, previousMean / 1e6, count);
+			}
+			return String.format("%s: first %.2f ms, steady at %.2f ms after %d utterances",
+					name, first / 1e6, steadyMean / 1e6, steadyAt);
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package edu.pugetsound.mathcs.nlp.lang;
+
+/**
+ * The optional stages of analyzing an utterance. These stages are skipped when a turn runs
+ * out of time (or when the component that runs them is still loading), so the features they
+ * compute may be missing from an utterance.
+ */
+public enum AnalysisStage {
+	/**
+	 * Anaphora resolution, which fills in Utterance.resolutions
+	 */
+	ANAPHORA,
+
+	/**
+	 * Semantic analysis of the constituency parse, which fills in Utterance.firstOrderRep
+	 */
+	CFG_SEMANTICS,
+
+	/**
+	 * Semantic parsing with SPF, which fills in Utterance.SPFparse and Utterance.SpfWordBreaks
+	 */
+	SPF_SEMANTICS
+}
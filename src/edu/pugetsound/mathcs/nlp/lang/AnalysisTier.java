@@ -0,0 +1,25 @@
+package edu.pugetsound.mathcs.nlp.lang;
+
+/**
+ * How much of the analysis an utterance goes through, chosen before the NLP pipeline runs
+ * (see TurnRouter). Most turns of a conversation are short acknowledgements whose dialogue
+ * act is all that matters, so they do not need to be parsed.
+ */
+public enum AnalysisTier {
+	/**
+	 * No NLP pipeline at all. The dialogue act comes from a known phrase, e.g. a greeting
+	 * or a backchannel like "uh huh".
+	 */
+	CHEAP,
+
+	/**
+	 * The utterance is tokenized and classified but not parsed, and anaphora resolution and
+	 * semantic analysis are skipped
+	 */
+	CLASSIFY,
+
+	/**
+	 * Every stage of the analysis
+	 */
+	FULL
+}
@@ -0,0 +1,192 @@
+package edu.pugetsound.mathcs.nlp.lang;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The dependency parse of a sentence, stored as parallel arrays: for each word, the index of
+ * its head and the id of the relation to its head. Words are indexed from 1 in the order of
+ * the sentence, like the tokens of CoreNLP, and the head of a root is ROOT. Words that are
+ * not part of the parse (e.g. punctuation) have no head and no relation.
+ *
+ * Relation labels like "nsubj" or "nmod:poss" are interned once for the whole program, so
+ * relations are compared as ints (see relationId()). The graph is immutable; the string
+ * rendering is only built the first time toString() is called.
+ */
+public class DependencyGraph {
+
+	/**
+	 * The head of a root
+	 */
+	public static final int ROOT = 0;
+
+	/**
+	 * The head and relation of a word that is not part of the parse, and the result of
+	 * firstRoot() for an empty graph
+	 */
+	public static final int NONE = -1;
+
+	// The interned relation labels. The arrays are replaced, never modified, when a label is
+	// added, so they can be read without the lock.
+	private static final ConcurrentHashMap<String, Integer> IDS = new ConcurrentHashMap<String, Integer>();
+	private static volatile String[] labels = new String[0];
+	private static volatile int[] baseIds = new int[0];
+
+	private final String[] words;
+	private final String[] tags;
+	private final int[] heads;
+	private final int[] relations;
+	private volatile String rendered;
+
+	/**
+	 * Constructs a graph. The arrays are indexed from 0 (the word with index 1 is at 0) and
+	 * belong to the graph afterwards.
+	 * @param words The words, or null for words that are not part of the parse
+	 * @param tags The part-of-speech tags of the words (or null)
+	 * @param heads The index of the head of each word, ROOT or NONE
+	 * @param relations The id of the relation of each word to its head, or NONE
+	 */
+	public DependencyGraph(String[] words, String[] tags, int[] heads, int[] relations) {
+		if(tags.length != words.length || heads.length != words.length || relations.length != words.length) {
+			throw new IllegalArgumentException("Expected one tag, head and relation per word");
+		}
+		this.words = words;
+		this.tags = tags;
+		this.heads = heads;
+		this.relations = relations;
+	}
+
+	/**
+	 * Returns the id of a relation label, interning it the first time
+	 * @param label A relation label, e.g. "nsubj"
+	 * @return The id of the label
+	 */
+	public static int relationId(String label) {
+		Integer id = IDS.get(label);
+		if(id != null) {
+			return id;
+		}
+		synchronized(IDS) {
+			id = IDS.get(label);
+			if(id == null) {
+				int colon = label.indexOf(':');
+				int base = colon < 0 ? labels.length : relationId(label.substring(0, colon));
+				id = labels.length;
+				String[] moreLabels = Arrays.copyOf(labels, id + 1);
+				int[] moreBaseIds = Arrays.copyOf(baseIds, id + 1);
+				moreLabels[id] = label;
+				moreBaseIds[id] = base;
+				labels = moreLabels;
+				baseIds = moreBaseIds;
+				IDS.put(label, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * Returns the label of a relation id
+	 * @param id An id returned by relationId()
+	 * @return The label
+	 */
+	public static String relationLabel(int id) {
+		return labels[id];
+	}
+
+	/**
+	 * Returns the id of the general relation of a relation, i.e. of its label without the
+	 * part after the colon ("nmod" for "nmod:poss"). A relation without a colon is its own
+	 * general relation.
+	 * @param id An id returned by relationId()
+	 * @return The id of the general relation
+	 */
+	public static int baseRelation(int id) {
+		return baseIds[id];
+	}
+
+	/**
+	 * Returns the highest word index
+	 */
+	public int size() {
+		return words.length;
+	}
+
+	/**
+	 * Returns a word, or null if it is not part of the parse
+	 * @param index The index of the word, from 1
+	 */
+	public String word(int index) {
+		return words[index - 1];
+	}
+
+	/**
+	 * Returns the part-of-speech tag of a word (or null)
+	 * @param index The index of the word, from 1
+	 */
+	public String tag(int index) {
+		return tags[index - 1];
+	}
+
+	/**
+	 * Returns the index of the head of a word, ROOT if the word is a root, or NONE if it is
+	 * not part of the parse
+	 * @param index The index of the word, from 1
+	 */
+	public int head(int index) {
+		return heads[index - 1];
+	}
+
+	/**
+	 * Returns the id of the relation of a word to its head, or NONE if it is not part of the
+	 * parse
+	 * @param index The index of the word, from 1
+	 */
+	public int relation(int index) {
+		return relations[index - 1];
+	}
+
+	/**
+	 * Returns the index of the first root, or NONE if the graph is empty
+	 */
+	public int firstRoot() {
+		for(int i = 0; i < heads.length; i++) {
+			if(heads[i] == ROOT) {
+				return i + 1;
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * Returns the graph in the indented format of CoreNLP's SemanticGraph, one word per line
+	 * below its head, e.g. "-> ate/VBD (root)"
+	 */
+	@Override
+	public String toString() {
+		String str = rendered;
+		if(str == null) {
+			StringBuilder builder = new StringBuilder();
+			render(ROOT, 0, builder);
+			str = builder.toString();
+			rendered = str;
+		}
+		return str;
+	}
+
+	/**
+	 * Appends the dependents of a word, and theirs, in the order of the sentence
+	 */
+	private void render(int head, int depth, StringBuilder builder) {
+		for(int i = 0; i < heads.length; i++) {
+			if(heads[i] != head) {
+				continue;
+			}
+			for(int j = 0; j < depth; j++) {
+				builder.append("  ");
+			}
+			builder.append("-> ").append(words[i]).append('/').append(tags[i])
+					.append(" (").append(labels[relations[i]]).append(")\n");
+			render(i + 1, depth + 1, builder);
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package edu.pugetsound.mathcs.nlp.lang;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class DependencyGraphTest {
+
+	private static final int NSUBJ = DependencyGraph.relationId("nsubj");
+
+	/**
+	 * "The cat ate the fish ." with the period left out of the parse
+	 */
+	private DependencyGraph statement() {
+		return new DependencyGraph(
+				new String[]{"The", "cat", "ate", "the", "fish", null},
+				new String[]{"DT", "NN", "VBD", "DT", "NN", null},
+				new int[]{2, 3, DependencyGraph.ROOT, 5, 3, DependencyGraph.NONE},
+				new int[]{DependencyGraph.relationId("det"), NSUBJ, DependencyGraph.relationId("root"),
+						DependencyGraph.relationId("det"), DependencyGraph.relationId("dobj"), DependencyGraph.NONE});
+	}
+
+	@Test
+	public void testAccessors() {
+		DependencyGraph graph = statement();
+		assertEquals(6, graph.size());
+		assertEquals(3, graph.firstRoot());
+		assertEquals("ate", graph.word(graph.firstRoot()));
+		assertEquals(3, graph.head(2));
+		assertEquals(NSUBJ, graph.relation(2));
+		assertEquals("nsubj", DependencyGraph.relationLabel(graph.relation(2)));
+		assertNull(graph.word(6));
+		assertEquals(DependencyGraph.NONE, graph.head(6));
+	}
+
+	@Test
+	public void testInterning() {
+		assertEquals(NSUBJ, DependencyGraph.relationId(new String("nsubj")));
+		int pass = DependencyGraph.relationId("nsubj:pass");
+		assertTrue(pass != NSUBJ);
+		assertEquals(NSUBJ, DependencyGraph.baseRelation(pass));
+		assertEquals(NSUBJ, DependencyGraph.baseRelation(NSUBJ));
+	}
+
+	@Test
+	public void testToString() {
+		assertEquals(
+				"-> ate/VBD (root)\n"
+				+ "  -> cat/NN (nsubj)\n"
+				+ "    -> The/DT (det)\n"
+				+ "  -> fish/NN (dobj)\n"
+				+ "    -> the/DT (det)\n",
+				statement().toString());
+	}
+
+	@Test
+	public void testEmpty() {
+		DependencyGraph graph = new DependencyGraph(new String[0], new String[0], new int[0], new int[0]);
+		assertEquals(DependencyGraph.NONE, graph.firstRoot());
+		assertEquals("", graph.toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMismatchedArrays() {
+		new DependencyGraph(new String[2], new String[2], new int[1], new int[2]);
+	}
+}
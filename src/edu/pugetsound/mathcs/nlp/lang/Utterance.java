@@ -1,6 +1,7 @@
 package edu.pugetsound.mathcs.nlp.lang;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -57,7 +58,7 @@ public class Utterance {
 	 * The dependency parse tree (or null) 
 	 * This can be generated by msrsplat.py in the scripts folder
 	 */
-	public String dependencyParse;
+	public DependencyGraph dependencyParse;
 
 	/**
 	 * A list of the grammatical subjects in the utterance
@@ -118,6 +119,28 @@ public class Utterance {
 	 * This can be generated by DAClassifier in the datag folder
 	 */
 	public DialogueActTag daTag;
+
+	/**
+	 * The analysis stages that were skipped because the turn ran out of time or their
+	 * component was still loading. The features those stages compute are missing from
+	 * this utterance.
+	 */
+	public EnumSet<AnalysisStage> skippedStages = EnumSet.noneOf(AnalysisStage.class);
+
+	/**
+	 * How much of the analysis the utterance went through (or null if it was not routed,
+	 * e.g. in a batch)
+	 */
+	public AnalysisTier tier;
+
+	/**
+	 * The sentences of the utterance, each with its own features, if there is more than one
+	 * (otherwise empty). The utterance itself merges the features of its sentences: its
+	 * tokens, subjects, direct objects, resolutions and first-order representation are those
+	 * of every sentence in order, while its parse trees, roots and SPF parse are those of the
+	 * first sentence. Its dialogue act is that of the whole utterance.
+	 */
+	public List<Utterance> sentences = new ArrayList<Utterance>();
 	
 	
 	/**
@@ -149,6 +172,9 @@ public class Utterance {
 		str += "SPF Parse: "+ SPFparse + "\n";
 		str += "DATag: "    + daTag + "\n";	
 		str += "Anaphoras: " + resolutions + "\n";
+		str += "Skipped: "  + skippedStages + "\n";
+		str += "Tier: "     + tier + "\n";
+		str += "Sentences: " + sentences.size() + "\n";
 		
 		return str;
 	}	
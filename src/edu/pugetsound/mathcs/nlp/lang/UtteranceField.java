@@ -0,0 +1,49 @@
+package edu.pugetsound.mathcs.nlp.lang;
+
+/**
+ * The groups of Utterance fields that the stages of analysis read and write. A stage can run
+ * as soon as every field it requires has been produced, so stages that do not depend on each
+ * other can run at the same time.
+ */
+public enum UtteranceField {
+	/**
+	 * Utterance.utterance and Utterance.punct
+	 */
+	TEXT,
+
+	/**
+	 * Utterance.canonicalUtterance
+	 */
+	CANONICAL,
+
+	/**
+	 * Utterance.tokens
+	 */
+	TOKENS,
+
+	/**
+	 * The constituency and dependency parses and the features read off them (roots, subjects,
+	 * direct objects and isPassive)
+	 */
+	PARSE,
+
+	/**
+	 * Utterance.daTag
+	 */
+	DA_TAG,
+
+	/**
+	 * Utterance.resolutions
+	 */
+	RESOLUTIONS,
+
+	/**
+	 * Utterance.firstOrderRep
+	 */
+	FIRST_ORDER,
+
+	/**
+	 * Utterance.SPFparse and Utterance.SpfWordBreaks
+	 */
+	SPF_PARSE
+}
@@ -0,0 +1,58 @@
+package edu.pugetsound.mathcs.nlp.util;
+
+/**
+ * A point in time by which some work should be finished. Work that runs past its deadline
+ * is expected to skip whatever it can do without.
+ */
+public final class Deadline {
+
+	/**
+	 * A deadline that never expires
+	 */
+	public static final Deadline NONE = new Deadline(0, false);
+
+	private final long expiresAt;
+	private final boolean bounded;
+
+	private Deadline(long expiresAt, boolean bounded) {
+		this.expiresAt = expiresAt;
+		this.bounded = bounded;
+	}
+
+	/**
+	 * Creates a deadline that expires a number of milliseconds from now
+	 * @param millis The time budget in milliseconds
+	 * @return The deadline
+	 */
+	public static Deadline after(long millis) {
+		return new Deadline(System.nanoTime() + millis * 1000000L, true);
+	}
+
+	/**
+	 * Returns true if this deadline ever expires
+	 * @return True if this deadline ever expires
+	 */
+	public boolean isBounded() {
+		return bounded;
+	}
+
+	/**
+	 * Returns true if the deadline has passed
+	 * @return True if the deadline has passed
+	 */
+	public boolean hasExpired() {
+		return bounded && System.nanoTime() - expiresAt >= 0;
+	}
+
+	/**
+	 * Returns the time left before the deadline
+	 * @return The time left in nanoseconds, 0 if the deadline has passed and Long.MAX_VALUE
+	 * 			if the deadline never expires
+	 */
+	public long remainingNanos() {
+		if(!bounded) {
+			return Long.MAX_VALUE;
+		}
+		return Math.max(0, expiresAt - System.nanoTime());
+	}
+}
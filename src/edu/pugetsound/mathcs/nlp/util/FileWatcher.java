@@ -0,0 +1,105 @@
+package edu.pugetsound.mathcs.nlp.util;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches some of the files of a directory and runs a task on a background thread whenever
+ * they change.
+ *
+ * Editors and deployment scripts often write a file in several steps (truncate, write,
+ * rename), so the task only runs once the directory has been quiet for QUIET_MILLIS. A
+ * change made while the task is running triggers it again afterwards.
+ */
+public class FileWatcher implements Closeable {
+
+	/**
+	 * How long the directory must be quiet before the task runs, in milliseconds
+	 */
+	public static final long QUIET_MILLIS = 200;
+
+	private final WatchService service;
+	private final Set<String> names;
+	private final Runnable task;
+	private final Thread thread;
+
+	/**
+	 * Starts watching a directory
+	 * @param directory The directory
+	 * @param names The names of the files in the directory to watch
+	 * @param task The task to run when one of the files is created, modified or deleted
+	 * @param threadName The name of the watching thread
+	 * @throws IOException if the directory cannot be watched
+	 */
+	public FileWatcher(Path directory, Collection<String> names, Runnable task, String threadName) throws IOException {
+		this.names = new HashSet<String>(names);
+		this.task = task;
+		service = directory.getFileSystem().newWatchService();
+		directory.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+		thread = new Thread(this::watch, threadName);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops watching the directory
+	 */
+	@Override
+	public void close() throws IOException {
+		service.close();
+		thread.interrupt();
+	}
+
+	private void watch() {
+		try {
+			while(true) {
+				boolean changed = drain(service.take());
+				WatchKey key;
+				while((key = service.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+					changed |= drain(key);
+				}
+				if(changed) {
+					try {
+						task.run();
+					}
+					catch(RuntimeException e) {
+						System.out.println("Error while handling a change to a watched file");
+						System.out.println(e);
+					}
+				}
+			}
+		}
+		catch(InterruptedException | ClosedWatchServiceException e) {
+			// Closed
+		}
+	}
+
+	/**
+	 * Returns true if any event of a key concerns a watched file
+	 */
+	private boolean drain(WatchKey key) {
+		boolean changed = false;
+		for(WatchEvent<?> event : key.pollEvents()) {
+			// Events were lost, so any file may have changed
+			if(event.kind() == OVERFLOW || names.contains(((Path) event.context()).getFileName().toString())) {
+				changed = true;
+			}
+		}
+		key.reset();
+		return changed;
+	}
+}
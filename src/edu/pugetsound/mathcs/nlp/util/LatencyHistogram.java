@@ -0,0 +1,171 @@
+package edu.pugetsound.mathcs.nlp.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds that many threads can record into without locking.
+ *
+ * Buckets are log-linear: every power of two is split into SUB_BUCKETS equal buckets, so a
+ * percentile is accurate to within 1/SUB_BUCKETS of its value (12.5%) whatever its size.
+ * Recording a latency costs a few bit operations and one atomic increment, which is cheap
+ * enough to leave on in production.
+ */
+public class LatencyHistogram implements LatencyHistogramMXBean {
+
+	/**
+	 * The number of bits used to split each power of two
+	 */
+	private static final int SUB_BUCKET_BITS = 3;
+
+	/**
+	 * The number of buckets each power of two is split into
+	 */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The number of powers of two covered. Latencies of 2^40 ns (about 18 minutes) or more
+	 * all fall into the last bucket.
+	 */
+	private static final int MAGNITUDES = 40;
+
+	private final String name;
+	private final AtomicLongArray buckets = new AtomicLongArray((MAGNITUDES + 1) * SUB_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Constructs an empty histogram
+	 * @param name The name of the histogram
+	 */
+	public LatencyHistogram(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Records a latency
+	 * @param nanos The latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		if(nanos < 0) {
+			nanos = 0;
+		}
+		buckets.incrementAndGet(bucketOf(nanos));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+		if(nanos > max.get()) {
+			max.accumulateAndGet(nanos, Math::max);
+		}
+	}
+
+	/**
+	 * Records the time since a stage started
+	 * @param start The value of System.nanoTime() when the stage started
+	 * @return The latency that was recorded in nanoseconds
+	 */
+	public long recordSince(long start) {
+		long elapsed = System.nanoTime() - start;
+		record(elapsed);
+		return elapsed;
+	}
+
+	/**
+	 * Returns the latency below which a fraction of the recorded latencies fall
+	 * @param quantile A number between 0 and 1 (e.g. 0.99 for the 99th percentile)
+	 * @return The latency in nanoseconds (the upper end of the bucket containing the
+	 * 			percentile, capped at the largest latency recorded) or 0 if nothing was recorded
+	 */
+	public long percentile(double quantile) {
+		long n = count.get();
+		if(n == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(quantile * n);
+		if(rank < 1) {
+			rank = 1;
+		}
+		long seen = 0;
+		// The last bucket has no upper bound, so anything in it is reported as the maximum
+		for(int i = 0; i < buckets.length() - 1; i++) {
+			seen += buckets.get(i);
+			if(seen >= rank) {
+				return Math.min(upperBoundOf(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Returns the index of the bucket a latency falls into
+	 */
+	static int bucketOf(long nanos) {
+		if(nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+		if(magnitude > MAGNITUDES) {
+			return (MAGNITUDES + 1) * SUB_BUCKETS - 1;
+		}
+		int sub = (int) (nanos >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Returns the largest latency that falls into a bucket
+	 */
+	static long upperBoundOf(int bucket) {
+		if(bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		long width = 1L << (magnitude - SUB_BUCKET_BITS);
+		return (1L << magnitude) + (sub + 1) * width - 1;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getCount() {
+		return count.get();
+	}
+
+	@Override
+	public double getMeanMillis() {
+		long n = count.get();
+		return n == 0 ? 0.0 : total.get() / (double) n / 1e6;
+	}
+
+	@Override
+	public double getP50Millis() {
+		return percentile(0.5) / 1e6;
+	}
+
+	@Override
+	public double getP99Millis() {
+		return percentile(0.99) / 1e6;
+	}
+
+	@Override
+	public double getP999Millis() {
+		return percentile(0.999) / 1e6;
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return max.get() / 1e6;
+	}
+
+	/**
+	 * Returns a one line summary of the histogram
+	 */
+	@Override
+	public String toString() {
+		return String.format("%s count=%d mean=%.3fms p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms",
+				name, getCount(), getMeanMillis(), getP50Millis(), getP99Millis(), getP999Millis(), getMaxMillis());
+	}
+}
@@ -0,0 +1,42 @@
+package edu.pugetsound.mathcs.nlp.util;
+
+/**
+ * The view of a LatencyHistogram exported over JMX
+ */
+public interface LatencyHistogramMXBean {
+
+	/**
+	 * @return The name of the stage whose latencies are recorded
+	 */
+	String getName();
+
+	/**
+	 * @return The number of latencies recorded
+	 */
+	long getCount();
+
+	/**
+	 * @return The mean latency in milliseconds
+	 */
+	double getMeanMillis();
+
+	/**
+	 * @return The median latency in milliseconds
+	 */
+	double getP50Millis();
+
+	/**
+	 * @return The 99th percentile latency in milliseconds
+	 */
+	double getP99Millis();
+
+	/**
+	 * @return The 99.9th percentile latency in milliseconds
+	 */
+	double getP999Millis();
+
+	/**
+	 * @return The largest latency in milliseconds
+	 */
+	double getMaxMillis();
+}
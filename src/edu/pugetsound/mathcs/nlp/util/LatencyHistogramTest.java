@@ -0,0 +1,63 @@
+package edu.pugetsound.mathcs.nlp.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testEmpty() {
+		LatencyHistogram histogram = new LatencyHistogram("empty");
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.percentile(0.5));
+		assertEquals(0.0, histogram.getMeanMillis(), 0.0);
+	}
+
+	@Test
+	public void testBucketsCoverEveryValue() {
+		// Every value falls into a bucket whose upper bound is at least the value and
+		// at most 12.5% above it
+		for(long v = 0; v < 1L << 20; v += 1 + v / 64) {
+			int bucket = LatencyHistogram.bucketOf(v);
+			long upper = LatencyHistogram.upperBoundOf(bucket);
+			assertTrue("Upper bound " + upper + " below " + v, upper >= v);
+			assertTrue("Upper bound " + upper + " too far above " + v, upper <= v + v / 8);
+			if(bucket > 0) {
+				assertTrue(LatencyHistogram.upperBoundOf(bucket - 1) < v);
+			}
+		}
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram("uniform");
+		for(long ms = 1; ms <= 1000; ms++) {
+			histogram.record(ms * 1000000);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500.5, histogram.getMeanMillis(), 1e-9);
+		assertEquals(500, histogram.getP50Millis(), 500 * 0.125);
+		assertEquals(990, histogram.getP99Millis(), 990 * 0.125);
+		assertEquals(1000, histogram.getP999Millis(), 1000 * 0.125);
+		assertEquals(1000, histogram.getMaxMillis(), 0.0);
+	}
+
+	@Test
+	public void testPercentileNeverExceedsMax() {
+		LatencyHistogram histogram = new LatencyHistogram("single");
+		histogram.record(1234567);
+		assertEquals(1234567, histogram.percentile(0.5));
+		assertEquals(1234567, histogram.percentile(1.0));
+	}
+
+	@Test
+	public void testHugeAndNegativeLatencies() {
+		LatencyHistogram histogram = new LatencyHistogram("extremes");
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE / 2);
+		assertEquals(2, histogram.getCount());
+		assertEquals(0, histogram.percentile(0.5));
+		assertEquals(Long.MAX_VALUE / 2, histogram.percentile(1.0));
+	}
+}
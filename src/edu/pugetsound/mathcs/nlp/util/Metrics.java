@@ -0,0 +1,159 @@
+package edu.pugetsound.mathcs.nlp.util;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A registry of the latency histograms, counters and gauges of the whole process.
+ *
+ * Histograms and counters are created the first time they are asked for and live for the
+ * rest of the process. Callers should look them up once and keep the reference, after which
+ * recording is lock-free. A gauge is a value that goes up and down (e.g. the length of a
+ * queue); it is read from its supplier whenever the metrics are read. Everything in the
+ * registry is exported over JMX under the edu.pugetsound.mathcs.nlp domain and can be
+ * dumped as plain text.
+ */
+public final class Metrics {
+
+	/**
+	 * The JMX domain the metrics are exported under
+	 */
+	public static final String JMX_DOMAIN = "edu.pugetsound.mathcs.nlp";
+
+	private static final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+	private static final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+	private static final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<String, LongSupplier>();
+
+	static {
+		register("type=Metrics", new MetricsMXBean() {
+			@Override
+			public Map<String, Long> getCounters() {
+				return Metrics.getCounters();
+			}
+
+			@Override
+			public Map<String, Long> getGauges() {
+				return Metrics.getGauges();
+			}
+
+			@Override
+			public String getReport() {
+				return Metrics.report();
+			}
+		});
+	}
+
+	private Metrics() {
+	}
+
+	/**
+	 * Returns the histogram with the given name, creating it if needed
+	 * @param name The name of the histogram, e.g. "analyzer.nlp"
+	 * @return The histogram
+	 */
+	public static LatencyHistogram histogram(String name) {
+		LatencyHistogram histogram = histograms.get(name);
+		if(histogram != null) {
+			return histogram;
+		}
+		LatencyHistogram created = new LatencyHistogram(name);
+		histogram = histograms.putIfAbsent(name, created);
+		if(histogram != null) {
+			return histogram;
+		}
+		register("type=Latency,name=" + ObjectName.quote(name), created);
+		return created;
+	}
+
+	/**
+	 * Returns the counter with the given name, creating it if needed
+	 * @param name The name of the counter, e.g. "analyzer.greeting"
+	 * @return The counter
+	 */
+	public static LongAdder counter(String name) {
+		return counters.computeIfAbsent(name, n -> new LongAdder());
+	}
+
+	/**
+	 * Registers a gauge. Only the first gauge registered under a name is kept.
+	 * @param name The name of the gauge, e.g. "model.deferred_work.depth"
+	 * @param value Reads the current value of the gauge. Must be thread-safe and cheap.
+	 */
+	public static void gauge(String name, LongSupplier value) {
+		gauges.putIfAbsent(name, value);
+	}
+
+	/**
+	 * Returns the current value of every gauge
+	 * @return A map from the name of each gauge to its value, sorted by name
+	 */
+	public static Map<String, Long> getGauges() {
+		Map<String, Long> values = new TreeMap<String, Long>();
+		for(Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+			values.put(gauge.getKey(), gauge.getValue().getAsLong());
+		}
+		return values;
+	}
+
+	/**
+	 * Returns the current value of every counter
+	 * @return A map from the name of each counter to its value, sorted by name
+	 */
+	public static Map<String, Long> getCounters() {
+		Map<String, Long> values = new TreeMap<String, Long>();
+		for(Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+			values.put(counter.getKey(), counter.getValue().sum());
+		}
+		return values;
+	}
+
+	/**
+	 * Returns every counter, gauge and histogram in plain text, one per line and sorted by name
+	 * @return The report
+	 */
+	public static String report() {
+		StringBuilder str = new StringBuilder();
+		for(Map.Entry<String, Long> counter : getCounters().entrySet()) {
+			str.append(counter.getKey()).append(" ").append(counter.getValue()).append("\n");
+		}
+		for(Map.Entry<String, Long> gauge : getGauges().entrySet()) {
+			str.append(gauge.getKey()).append(" ").append(gauge.getValue()).append("\n");
+		}
+		for(LatencyHistogram histogram : new TreeMap<String, LatencyHistogram>(histograms).values()) {
+			str.append(histogram).append("\n");
+		}
+		return str.toString();
+	}
+
+	/**
+	 * Prints every counter, gauge and histogram
+	 * @param out Where to print the report
+	 */
+	public static void dump(PrintStream out) {
+		out.print(report());
+		out.flush();
+	}
+
+	/**
+	 * Exports an object over JMX. Metrics still work if the platform MBean server is unavailable.
+	 */
+	private static void register(String properties, Object bean) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(bean, new ObjectName(JMX_DOMAIN + ":" + properties));
+		}
+		catch(JMException | SecurityException e) {
+			System.out.println("Could not export metrics over JMX: " + e);
+		}
+	}
+}
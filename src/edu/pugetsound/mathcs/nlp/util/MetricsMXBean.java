@@ -0,0 +1,25 @@
+package edu.pugetsound.mathcs.nlp.util;
+
+import java.util.Map;
+
+/**
+ * The view of the Metrics registry exported over JMX. Each latency histogram is also
+ * exported as its own LatencyHistogramMXBean.
+ */
+public interface MetricsMXBean {
+
+	/**
+	 * @return The current value of every counter indexed by name
+	 */
+	Map<String, Long> getCounters();
+
+	/**
+	 * @return The current value of every gauge indexed by name
+	 */
+	Map<String, Long> getGauges();
+
+	/**
+	 * @return All counters, gauges and histograms in plain text, one per line
+	 */
+	String getReport();
+}
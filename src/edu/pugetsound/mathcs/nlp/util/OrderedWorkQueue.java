@@ -0,0 +1,177 @@
+package edu.pugetsound.mathcs.nlp.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs background tasks one at a time in the order they were submitted.
+ *
+ * Tasks run on a (possibly shared) executor, but a queue never runs two of its own tasks at
+ * the same time, so many queues can share a small pool of threads while each keeps its tasks
+ * in order. A task that throws is counted as failed and does not stop the tasks queued after it.
+ *
+ * The queue keeps track of how many tasks are waiting (its depth), how long tasks waited
+ * before they started (their lag) and how long callers of awaitIdle() were held up by
+ * unfinished work, so it is easy to tell when background work falls behind. The depth of all
+ * queues with the same name and the lag of their tasks are also exported through Metrics.
+ */
+public class OrderedWorkQueue {
+
+	/**
+	 * The name of the metrics of queues constructed without a name
+	 */
+	public static final String DEFAULT_NAME = "work_queue";
+
+	// The number of unfinished tasks of all queues with each name
+	private static final ConcurrentMap<String, AtomicInteger> DEPTHS = new ConcurrentHashMap<String, AtomicInteger>();
+
+	private final Executor executor;
+	private CompletableFuture<Void> tail;
+	private final AtomicInteger sharedDepth;
+	private final LatencyHistogram lag;
+
+	private final AtomicInteger depth = new AtomicInteger();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong lastLagNanos = new AtomicLong();
+	private final AtomicLong maxLagNanos = new AtomicLong();
+	private final AtomicLong totalStallNanos = new AtomicLong();
+
+	/**
+	 * Constructs a queue whose tasks run on the given executor
+	 * @param executor The executor that runs the tasks
+	 */
+	public OrderedWorkQueue(Executor executor) {
+		this(executor, DEFAULT_NAME);
+	}
+
+	/**
+	 * Constructs a queue whose tasks run on the given executor. The number of unfinished
+	 * tasks of all queues with the same name is the gauge "name.depth", and the time their
+	 * tasks waited is the histogram "name.lag".
+	 * @param executor The executor that runs the tasks
+	 * @param name The name of the metrics of the queue, e.g. "model.deferred_work"
+	 */
+	public OrderedWorkQueue(Executor executor, String name) {
+		this.executor = executor;
+		this.tail = CompletableFuture.completedFuture(null);
+		this.sharedDepth = DEPTHS.computeIfAbsent(name, n -> {
+			AtomicInteger total = new AtomicInteger();
+			Metrics.gauge(n + ".depth", total::get);
+			return total;
+		});
+		this.lag = Metrics.histogram(name + ".lag");
+	}
+
+	/**
+	 * Queues a task. It runs after every task submitted before it has finished.
+	 * @param task The task
+	 */
+	public synchronized void submit(Runnable task) {
+		final long enqueued = System.nanoTime();
+		depth.incrementAndGet();
+		sharedDepth.incrementAndGet();
+		tail = tail.thenRunAsync(() -> {
+			long waited = System.nanoTime() - enqueued;
+			lastLagNanos.set(waited);
+			maxLagNanos.accumulateAndGet(waited, Math::max);
+			lag.record(waited);
+			try {
+				task.run();
+			}
+			catch(RuntimeException e) {
+				failed.incrementAndGet();
+			}
+			finally {
+				depth.decrementAndGet();
+				sharedDepth.decrementAndGet();
+				completed.incrementAndGet();
+			}
+		}, executor);
+	}
+
+	/**
+	 * Blocks until every task submitted so far has finished
+	 */
+	public void awaitIdle() {
+		CompletableFuture<Void> last;
+		synchronized(this) {
+			last = tail;
+		}
+		if(!last.isDone()) {
+			long start = System.nanoTime();
+			last.join();
+			totalStallNanos.addAndGet(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Returns the number of tasks that are queued or running
+	 * @return The number of unfinished tasks
+	 */
+	public int getDepth() {
+		return depth.get();
+	}
+
+	/**
+	 * Returns the number of tasks that have finished (including those that failed)
+	 * @return The number of finished tasks
+	 */
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+	/**
+	 * Returns the number of tasks that threw an exception
+	 * @return The number of failed tasks
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * Returns how long the most recently started task waited in the queue
+	 * @return The lag in nanoseconds
+	 */
+	public long getLastLagNanos() {
+		return lastLagNanos.get();
+	}
+
+	/**
+	 * Returns the longest time any task waited in the queue
+	 * @return The lag in nanoseconds
+	 */
+	public long getMaxLagNanos() {
+		return maxLagNanos.get();
+	}
+
+	/**
+	 * Returns the total time callers of awaitIdle() spent waiting for unfinished tasks
+	 * @return The time in nanoseconds
+	 */
+	public long getTotalStallNanos() {
+		return totalStallNanos.get();
+	}
+
+	/**
+	 * Creates a pool of daemon threads for running the tasks of one or more queues. Daemon
+	 * threads do not keep the JVM alive once the conversations are over.
+	 * @param numThreads The number of threads in the pool
+	 * @param name The name given to the threads
+	 * @return A pool of daemon threads
+	 */
+	public static ExecutorService newDaemonPool(int numThreads, String name) {
+		AtomicInteger counter = new AtomicInteger();
+		return Executors.newFixedThreadPool(numThreads, r -> {
+			Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+}
@@ -0,0 +1,125 @@
+package edu.pugetsound.mathcs.nlp.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * Loads independent components at the same time on a pool of background threads.
+ *
+ * Each component is loaded by a named task. Callers wait only for the components they need
+ * right away and let the others finish in the background. The loader records how long each
+ * component took to load and can tell whether every component is ready.
+ */
+public class ParallelLoader {
+	private final ExecutorService pool;
+	private final List<CompletableFuture<?>> loads = new ArrayList<CompletableFuture<?>>();
+	private final Map<String, Long> loadTimes = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+
+	/**
+	 * Constructs a loader whose tasks run on one thread per core
+	 */
+	public ParallelLoader() {
+		pool = OrderedWorkQueue.newDaemonPool(Runtime.getRuntime().availableProcessors(), "loader");
+	}
+
+	/**
+	 * Starts loading a component in the background
+	 * @param name The name of the component, used when reporting load times
+	 * @param loader Loads the component
+	 * @return A future that holds the component once it is loaded
+	 */
+	public synchronized <T> CompletableFuture<T> load(String name, Supplier<T> loader) {
+		CompletableFuture<T> load = CompletableFuture.supplyAsync(() -> {
+			long start = System.nanoTime();
+			T component;
+			try {
+				component = loader.get();
+			}
+			catch(RuntimeException | Error e) {
+				System.out.println("Could not load " + name);
+				System.out.println(e);
+				throw e;
+			}
+			long elapsed = System.nanoTime() - start;
+			loadTimes.put(name, elapsed);
+			if(Logger.debug()) {
+				System.out.println("Loaded " + name + " in " + elapsed/1000000 + " milliseconds");
+			}
+			return component;
+		}, pool);
+		loads.add(load);
+		return load;
+	}
+
+	/**
+	 * Stops accepting new components. Components already started still finish loading,
+	 * after which the loader's threads exit.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Returns true if every component has finished loading (or failed to load)
+	 * @return True if every component has finished loading
+	 */
+	public synchronized boolean isReady() {
+		for(CompletableFuture<?> load : loads) {
+			if(!load.isDone()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Blocks until every component has finished loading
+	 * @throws RuntimeException if a component failed to load
+	 */
+	public void awaitReady() {
+		CompletableFuture<?>[] all;
+		synchronized(this) {
+			all = loads.toArray(new CompletableFuture<?>[loads.size()]);
+		}
+		await(CompletableFuture.allOf(all));
+	}
+
+	/**
+	 * Returns how long each component that has finished loading took to load
+	 * @return A map from the name of each component to its load time in nanoseconds, in
+	 * 			the order the components finished
+	 */
+	public Map<String, Long> getLoadTimes() {
+		synchronized(loadTimes) {
+			return new LinkedHashMap<String, Long>(loadTimes);
+		}
+	}
+
+	/**
+	 * Waits for a component to load
+	 * @param load A future returned by load()
+	 * @return The component
+	 * @throws RuntimeException the exception thrown while loading the component
+	 */
+	public static <T> T await(CompletableFuture<T> load) {
+		try {
+			return load.join();
+		}
+		catch(CompletionException e) {
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if(e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw e;
+		}
+	}
+}